@@ -0,0 +1,104 @@
+package org.embulk.output.http_json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.embulk.output.http_json.jaxrs.JAXRSSplitRequestException;
+
+// NOTE: When the response satisfies 'split_condition_jq', the records are split in half and each
+//       half is sent again, recursively. A record that still fails alone is rejected, and the
+//       others get through.
+class HttpJsonBisectingRequester {
+
+    private final BiFunction<JsonNode, Long, CompletableFuture<ObjectNode>> requester;
+    private final Function<List<JsonNode>, JsonNode> bodyBuilder;
+    private final HttpJsonRejectSink rejectSink;
+
+    // NOTE: 'requester' sends a request body with the offset of its first record.
+    HttpJsonBisectingRequester(
+            BiFunction<JsonNode, Long, CompletableFuture<ObjectNode>> requester,
+            Function<List<JsonNode>, JsonNode> bodyBuilder,
+            HttpJsonRejectSink rejectSink) {
+        this.requester = requester;
+        this.bodyBuilder = bodyBuilder;
+        this.rejectSink = rejectSink;
+    }
+
+    // NOTE: 'records' is called only when the request is split. Each half is sent with the offset
+    //       of its first record in the task.
+    CompletableFuture<List<ObjectNode>> request(
+            long recordOffset,
+            Supplier<CompletableFuture<ObjectNode>> firstRequest,
+            Supplier<List<JsonNode>> records) {
+        return requestOrSplit(firstRequest.get(), recordOffset, records);
+    }
+
+    private CompletableFuture<List<ObjectNode>> requestOrSplit(
+            CompletableFuture<ObjectNode> request,
+            long recordOffset,
+            Supplier<List<JsonNode>> records) {
+        return request.handle(
+                        (response, t) -> {
+                            if (t == null) {
+                                return CompletableFuture.completedFuture(
+                                        Collections.singletonList(response));
+                            }
+                            final Optional<JAXRSSplitRequestException> split =
+                                    findSplitRequestException(t);
+                            if (!split.isPresent()) {
+                                final CompletableFuture<List<ObjectNode>> failed =
+                                        new CompletableFuture<>();
+                                failed.completeExceptionally(t);
+                                return failed;
+                            }
+                            return splitAndRequest(records.get(), recordOffset, split.get());
+                        })
+                .thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<List<ObjectNode>> splitAndRequest(
+            List<JsonNode> records, long recordOffset, JAXRSSplitRequestException split) {
+        if (records.size() <= 1) {
+            records.forEach(record -> rejectSink.reject(record, split.getResponseJson()));
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        final List<JsonNode> first = records.subList(0, records.size() / 2);
+        final List<JsonNode> second = records.subList(records.size() / 2, records.size());
+        return requestOrSplit(first, recordOffset)
+                .thenCompose(
+                        firstResponses ->
+                                requestOrSplit(second, recordOffset + first.size())
+                                        .thenApply(
+                                                secondResponses -> {
+                                                    final List<ObjectNode> responses =
+                                                            new ArrayList<>(firstResponses);
+                                                    responses.addAll(secondResponses);
+                                                    return responses;
+                                                }));
+    }
+
+    private CompletableFuture<List<ObjectNode>> requestOrSplit(
+            List<JsonNode> records, long recordOffset) {
+        return requestOrSplit(
+                requester.apply(bodyBuilder.apply(records), recordOffset),
+                recordOffset,
+                () -> records);
+    }
+
+    // NOTE: The exception thrown by the requester may be wrapped.
+    private static Optional<JAXRSSplitRequestException> findSplitRequestException(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof JAXRSSplitRequestException) {
+                return Optional.of((JAXRSSplitRequestException) t);
+            }
+        }
+        return Optional.empty();
+    }
+}
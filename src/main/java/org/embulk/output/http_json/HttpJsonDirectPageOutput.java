@@ -0,0 +1,153 @@
+package org.embulk.output.http_json;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import org.embulk.base.restclient.record.SinglePageRecordReader;
+import org.embulk.config.TaskReport;
+import org.embulk.output.http_json.jackson.JacksonJsonArrayBuffer;
+import org.embulk.output.http_json.jackson.JacksonPageRecordWriter;
+import org.embulk.output.http_json.jackson.JacksonResponseCollector;
+import org.embulk.output.http_json.util.RequestPipeline;
+import org.embulk.output.http_json.util.SpillableQueue;
+import org.embulk.spi.DataException;
+import org.embulk.spi.Page;
+import org.embulk.spi.PageReader;
+import org.embulk.spi.TransactionalPageOutput;
+
+// NOTE: Used instead of the page output of embulk-base-restclient when the records are not
+//       transformed. The records are written from the page straight into the request body.
+public class HttpJsonDirectPageOutput implements TransactionalPageOutput {
+
+    private final String taskReportKeyName;
+    private final PageReader pageReader;
+    private final SinglePageRecordReader singlePageRecordReader;
+    private final JacksonPageRecordWriter recordWriter;
+    private final JacksonJsonArrayBuffer arrayBuffer;
+    private final IntSupplier maxRecords;
+    private final long maxBytes;
+    private final boolean flushOnCommit;
+    private final RequestPipeline<Supplier<CompletableFuture<List<ObjectNode>>>, List<ObjectNode>>
+            requestPipeline;
+    private final BiFunction<byte[], Long, Supplier<CompletableFuture<List<ObjectNode>>>> requester;
+    private final JacksonResponseCollector responseCollector;
+    private final TaskReport taskReport;
+    private final SpillableQueue<byte[]> pendingBodies;
+    // NOTE: The offsets of the pending bodies. They are small, so they are not spilled.
+    private final ArrayDeque<Long> pendingOffsets = new ArrayDeque<>();
+    private final HttpJsonRequestJournal journal;
+
+    HttpJsonDirectPageOutput(
+            String taskReportKeyName,
+            PageReader pageReader,
+            JacksonPageRecordWriter recordWriter,
+            IntSupplier maxRecords,
+            long maxBytes,
+            boolean flushOnCommit,
+            RequestPipeline<Supplier<CompletableFuture<List<ObjectNode>>>, List<ObjectNode>>
+                    requestPipeline,
+            BiFunction<byte[], Long, Supplier<CompletableFuture<List<ObjectNode>>>> requester,
+            JacksonResponseCollector responseCollector,
+            TaskReport taskReport,
+            SpillableQueue<byte[]> pendingBodies,
+            HttpJsonRequestJournal journal) {
+        this.taskReportKeyName = taskReportKeyName;
+        this.pageReader = pageReader;
+        this.singlePageRecordReader = new SinglePageRecordReader(pageReader);
+        this.recordWriter = recordWriter;
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.flushOnCommit = flushOnCommit;
+        this.requestPipeline = requestPipeline;
+        this.requester = requester;
+        this.responseCollector = responseCollector;
+        this.taskReport = taskReport;
+        this.pendingBodies = pendingBodies;
+        this.journal = journal;
+        try {
+            this.arrayBuffer = new JacksonJsonArrayBuffer();
+        } catch (IOException e) {
+            throw new DataException(e);
+        }
+    }
+
+    @Override
+    public void add(Page page) {
+        pageReader.setPage(page);
+        try {
+            while (pageReader.nextRecord()) {
+                addRecord();
+            }
+        } catch (IOException e) {
+            throw new DataException("Failed to write the record as json.", e);
+        }
+    }
+
+    private void addRecord() throws IOException {
+        if (journal.skipsRecord()) {
+            return;
+        }
+        int recordOffset =
+                arrayBuffer.append(
+                        generator -> recordWriter.write(singlePageRecordReader, generator));
+        if (arrayBuffer.getRecordCount() > 1 && arrayBuffer.getArraySize() > maxBytes) {
+            send(arrayBuffer.getRecordCount() - 1, arrayBuffer.takeAllButLast(recordOffset));
+        }
+        if (arrayBuffer.getRecordCount() >= maxRecords.getAsInt()
+                || arrayBuffer.getArraySize() >= maxBytes) {
+            send(arrayBuffer.getRecordCount(), arrayBuffer.takeAll());
+        }
+    }
+
+    private void send(int records, byte[] body) {
+        final long offset = journal.onSliced(records);
+        if (flushOnCommit) {
+            pendingBodies.add(body);
+            pendingOffsets.add(offset);
+        } else {
+            requestPipeline.submit(requester.apply(body, offset));
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (arrayBuffer.getRecordCount() > 0) {
+            send(arrayBuffer.getRecordCount(), arrayBuffer.takeAll());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            pageReader.close();
+            arrayBuffer.close();
+        } catch (IOException e) {
+            throw new DataException(e);
+        } finally {
+            try {
+                pendingBodies.close();
+            } finally {
+                requestPipeline.close();
+            }
+        }
+    }
+
+    @Override
+    public void abort() {}
+
+    @Override
+    public TaskReport commit() {
+        pendingBodies.stream()
+                .forEach(
+                        body ->
+                                requestPipeline.submit(
+                                        requester.apply(body, pendingOffsets.pollFirst())));
+        requestPipeline.finish();
+        return responseCollector.writeTo(taskReport, taskReportKeyName);
+    }
+}
@@ -13,6 +13,11 @@ import java.util.Map;
 import java.util.Optional;
 import org.embulk.base.restclient.RestClientOutputPluginBase;
 import org.embulk.base.restclient.RestClientOutputTaskBase;
+import org.embulk.config.ConfigDiff;
+import org.embulk.config.TaskSource;
+import org.embulk.spi.OutputPlugin;
+import org.embulk.spi.Schema;
+import org.embulk.spi.TransactionalPageOutput;
 import org.embulk.util.config.Config;
 import org.embulk.util.config.ConfigDefault;
 import org.embulk.util.config.ConfigMapperFactory;
@@ -22,11 +27,41 @@ public class HttpJsonOutputPlugin
     private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY =
             ConfigMapperFactory.builder().addDefaultModules().build();
 
+    private final HttpJsonOutputPluginDelegate delegate;
+
     public HttpJsonOutputPlugin() {
-        super(
-                CONFIG_MAPPER_FACTORY,
-                HttpJsonOutputPlugin.PluginTask.class,
-                new HttpJsonOutputPluginDelegate(CONFIG_MAPPER_FACTORY));
+        this(new HttpJsonOutputPluginDelegate(CONFIG_MAPPER_FACTORY));
+    }
+
+    private HttpJsonOutputPlugin(HttpJsonOutputPluginDelegate delegate) {
+        super(CONFIG_MAPPER_FACTORY, HttpJsonOutputPlugin.PluginTask.class, delegate);
+        this.delegate = delegate;
+    }
+
+    @Override
+    public TransactionalPageOutput open(
+            final TaskSource taskSource, final Schema schema, final int taskIndex) {
+        final PluginTask task =
+                CONFIG_MAPPER_FACTORY.createTaskMapper().map(taskSource, PluginTask.class);
+        if (delegate.canWriteRecordsDirectly(task)) {
+            return delegate.buildDirectPageOutput(task, schema, taskIndex);
+        }
+        return super.open(taskSource, schema, taskIndex);
+    }
+
+    // NOTE: The tasks that are not committed are run again, and they skip the records that are
+    //       acknowledged in their journals if 'journal_directory' is set.
+    @Override
+    public ConfigDiff resume(
+            final TaskSource taskSource,
+            final Schema schema,
+            final int taskCount,
+            final OutputPlugin.Control control) {
+        final PluginTask task =
+                CONFIG_MAPPER_FACTORY.createTaskMapper().map(taskSource, PluginTask.class);
+        // NOTE: 'validateOutputTask' is not called on resume, so the task is configured here.
+        delegate.configureTask(task);
+        return delegate.egestEmbulkData(task, schema, taskCount, control.run(taskSource));
     }
 
     public interface PluginTask extends RestClientOutputTaskBase {
@@ -51,6 +86,10 @@ public class HttpJsonOutputPlugin
         @ConfigDefault("[]")
         public List<@Size(min = 1, max = 1) Map<@NotBlank String, @NotBlank String>> getHeaders();
 
+        @Config("idempotency_key_header")
+        @ConfigDefault("null")
+        public Optional<@NotBlank String> getIdempotencyKeyHeader();
+
         @Config("method")
         @ConfigDefault("\"POST\"")
         @Pattern(
@@ -63,16 +102,127 @@ public class HttpJsonOutputPlugin
         @Positive
         public Integer getBufferSize();
 
+        @Config("adaptive_buffer_size")
+        @ConfigDefault("false")
+        @NotNull
+        public Boolean getAdaptiveBufferSize();
+
+        @Config("min_buffer_size")
+        @ConfigDefault("1")
+        @Positive
+        public Integer getMinBufferSize();
+
+        @Config("max_buffer_size")
+        @ConfigDefault("null")
+        public Optional<@Positive Integer> getMaxBufferSize();
+
+        @Config("target_response_time_millis")
+        @ConfigDefault("1000")
+        @Positive
+        public Long getTargetResponseTimeMillis();
+
+        @Config("max_request_bytes")
+        @ConfigDefault("null")
+        public Optional<@Positive Long> getMaxRequestBytes();
+
+        @Config("flush_mode")
+        @ConfigDefault("\"commit\"")
+        @Pattern(regexp = "^(commit|streaming)$")
+        public String getFlushMode();
+
+        @Config("spill_threshold_bytes")
+        @ConfigDefault("null")
+        public Optional<@Positive Long> getSpillThresholdBytes();
+
+        @Config("spill_directory")
+        @ConfigDefault("null")
+        public Optional<String> getSpillDirectory();
+
+        @Config("journal_directory")
+        @ConfigDefault("null")
+        public Optional<String> getJournalDirectory();
+
+        @Config("max_concurrent_requests")
+        @ConfigDefault("1")
+        @Positive
+        public Integer getMaxConcurrentRequests();
+
+        @Config("request_engine")
+        @ConfigDefault("\"blocking\"")
+        @Pattern(regexp = "^(blocking|async)$")
+        public String getRequestEngine();
+
+        @Config("requests_per_second")
+        @ConfigDefault("null")
+        public Optional<@Positive Double> getRequestsPerSecond();
+
+        @Config("bytes_per_second")
+        @ConfigDefault("null")
+        public Optional<@Positive Long> getBytesPerSecond();
+
+        @Config("http_version")
+        @ConfigDefault("\"1.1\"")
+        @Pattern(regexp = "^(1\\.1|2)$")
+        public String getHttpVersion();
+
+        @Config("max_connections")
+        @ConfigDefault("10")
+        @Positive
+        public Integer getMaxConnections();
+
+        @Config("share_connection_pool")
+        @ConfigDefault("false")
+        @NotNull
+        public Boolean getShareConnectionPool();
+
+        @Config("idle_connection_timeout_millis")
+        @ConfigDefault("60000")
+        @Positive
+        public Integer getIdleConnectionTimeoutMillis();
+
+        @Config("connect_timeout_millis")
+        @ConfigDefault("0")
+        @PositiveOrZero
+        public Integer getConnectTimeoutMillis();
+
+        @Config("read_timeout_millis")
+        @ConfigDefault("0")
+        @PositiveOrZero
+        public Integer getReadTimeoutMillis();
+
         @Config("fill_json_null_for_embulk_null")
         @ConfigDefault("false")
         @NotNull
         public Boolean getFillJsonNullForEmbulkNull();
 
+        @Config("request_compression")
+        @ConfigDefault("\"none\"")
+        @Pattern(regexp = "^(none|gzip|deflate)$")
+        public String getRequestCompression();
+
+        @Config("request_compression_level")
+        @ConfigDefault("6")
+        @Min(0)
+        @Max(9)
+        public Integer getRequestCompressionLevel();
+
         @Config("transformer_jq")
         @ConfigDefault("\".\"")
         @NotBlank
         public String getTransformerJq();
 
+        @Config("record_transformer_jq")
+        @ConfigDefault("null")
+        public Optional<String> getRecordTransformerJq();
+
+        @Config("envelope_jq")
+        @ConfigDefault("null")
+        public Optional<String> getEnvelopeJq();
+
+        @Config("transformer_threads")
+        @ConfigDefault("null")
+        public Optional<@Positive Integer> getTransformerThreads();
+
         @Config("success_condition_jq")
         @ConfigDefault("\".status_code_class == 200\"")
         @NotBlank
@@ -83,6 +233,24 @@ public class HttpJsonOutputPlugin
         @NotBlank
         public String getRetryableConditionJq();
 
+        @Config("split_condition_jq")
+        @ConfigDefault("null")
+        public Optional<String> getSplitConditionJq();
+
+        @Config("reject_file_path")
+        @ConfigDefault("null")
+        public Optional<String> getRejectFilePath();
+
+        @Config("response_retention")
+        @ConfigDefault("\"all\"")
+        @Pattern(regexp = "^(all|none|summary|first|sampled|errors)$")
+        public String getResponseRetention();
+
+        @Config("response_retention_count")
+        @ConfigDefault("10")
+        @Positive
+        public Integer getResponseRetentionCount();
+
         @Config("show_request_body_on_error")
         @ConfigDefault("true")
         @NotNull
@@ -103,6 +271,24 @@ public class HttpJsonOutputPlugin
         @PositiveOrZero
         public int getMaximumRetryIntervalMillis();
 
+        @Config("retry_jitter")
+        @ConfigDefault("false")
+        @NotNull
+        public Boolean getRetryJitter();
+
+        @Config("respect_retry_after")
+        @ConfigDefault("true")
+        @NotNull
+        public Boolean getRespectRetryAfter();
+
+        @Config("maximum_retry_after_millis")
+        @ConfigDefault("null")
+        public Optional<@PositiveOrZero Long> getMaximumRetryAfterMillis();
+
+        @Config("retry_interval_jq")
+        @ConfigDefault("null")
+        public Optional<String> getRetryIntervalJq();
+
         @Config("default_timezone")
         @ConfigDefault("\"UTC\"")
         @NotBlank
@@ -2,14 +2,18 @@ package org.embulk.output.http_json;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
-import javax.ws.rs.client.ClientBuilder;
+import net.thisptr.jackson.jq.JsonQuery;
 import org.embulk.base.restclient.RestClientOutputPluginDelegate;
 import org.embulk.base.restclient.ServiceRequestMapper;
 import org.embulk.base.restclient.jackson.JacksonServiceRequestMapper;
@@ -21,19 +25,29 @@ import org.embulk.config.ConfigException;
 import org.embulk.config.TaskReport;
 import org.embulk.output.http_json.HttpJsonOutputPlugin.PluginTask;
 import org.embulk.output.http_json.jackson.JacksonCommitWithFlushRecordBuffer;
+import org.embulk.output.http_json.jackson.JacksonPageRecordWriter;
+import org.embulk.output.http_json.jackson.JacksonResponseCollector;
+import org.embulk.output.http_json.jackson.JacksonSerializedSizeEstimator;
+import org.embulk.output.http_json.jackson.JacksonStreamingFlushRecordBuffer;
 import org.embulk.output.http_json.jackson.scope.JacksonAllInObjectScope;
-import org.embulk.output.http_json.jaxrs.JAXRSJsonNodeSingleRequester;
-import org.embulk.output.http_json.jaxrs.JAXRSObjectNodeResponseEntityReader;
-import org.embulk.output.http_json.jq.IllegalJQProcessingException;
+import org.embulk.output.http_json.jaxrs.JAXRSJsonNodeTaskRequester;
+import org.embulk.output.http_json.jaxrs.JAXRSRequestListener;
 import org.embulk.output.http_json.jq.InvalidJQFilterException;
 import org.embulk.output.http_json.jq.JQ;
+import org.embulk.output.http_json.util.AdaptiveBufferSize;
 import org.embulk.output.http_json.util.Durations;
 import org.embulk.output.http_json.util.ProgressLogger;
+import org.embulk.output.http_json.util.RecordSlicer;
+import org.embulk.output.http_json.util.RequestPipeline;
+import org.embulk.output.http_json.util.SpillableQueue;
+import org.embulk.output.http_json.util.TokenBucket;
+import org.embulk.output.http_json.util.TransformerWorkerPool;
 import org.embulk.output.http_json.validator.BeanValidator;
 import org.embulk.spi.DataException;
+import org.embulk.spi.Exec;
 import org.embulk.spi.Schema;
+import org.embulk.spi.TransactionalPageOutput;
 import org.embulk.util.config.ConfigMapperFactory;
-import org.embulk.util.retryhelper.jaxrs.JAXRSRetryHelper;
 import org.embulk.util.timestamp.TimestampFormatter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +58,7 @@ public class HttpJsonOutputPluginDelegate
     private static final Logger logger =
             LoggerFactory.getLogger(HttpJsonOutputPluginDelegate.class);
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
     private static final String BUFFER_ATTRIBUTE_KEY = "buf";
     private static final JQ jq = new JQ();
 
@@ -60,17 +75,45 @@ public class HttpJsonOutputPluginDelegate
         configureTask(task);
         BeanValidator.validate(task);
         validateJsonQuery("transformer_jq", task.getTransformerJq());
+        task.getRecordTransformerJq()
+                .ifPresent(filter -> validateJsonQuery("record_transformer_jq", filter));
+        task.getEnvelopeJq().ifPresent(filter -> validateJsonQuery("envelope_jq", filter));
+        if (!isIdentityFilter(task.getTransformerJq())
+                && (task.getRecordTransformerJq().isPresent()
+                        || task.getEnvelopeJq().isPresent())) {
+            throw new ConfigException(
+                    "'transformer_jq' cannot be used with 'record_transformer_jq' or 'envelope_jq'.");
+        }
+        if (task.getEnvelopeJq().isPresent() && !task.getRecordTransformerJq().isPresent()) {
+            throw new ConfigException("'envelope_jq' requires 'record_transformer_jq'.");
+        }
+        if (task.getAdaptiveBufferSize()
+                && (task.getMinBufferSize() > task.getBufferSize()
+                        || task.getBufferSize() > getMaxBufferSize(task))) {
+            throw new ConfigException(
+                    "'buffer_size' must be between 'min_buffer_size' and 'max_buffer_size'.");
+        }
         validateJsonQuery("retryable_condition_jq", task.getRetryableConditionJq());
         validateJsonQuery("success_condition_jq", task.getSuccessConditionJq());
+        task.getSplitConditionJq()
+                .ifPresent(filter -> validateJsonQuery("split_condition_jq", filter));
+        task.getRetryIntervalJq()
+                .ifPresent(filter -> validateJsonQuery("retry_interval_jq", filter));
     }
 
-    private void configureTask(PluginTask task) {
+    void configureTask(PluginTask task) {
         progressLogger = new ProgressLogger(Durations.parseDuration(task.getLoggingInterval()));
+        TransformerWorkerPool.start(getTransformerThreads(task));
+        TokenBucket.clearShared();
     }
 
     private void validateJsonQuery(String name, String jqFilter) {
+        compileJsonQuery(name, jqFilter);
+    }
+
+    private JsonQuery compileJsonQuery(String name, String jqFilter) {
         try {
-            jq.validateFilter(jqFilter);
+            return jq.compileFilter(jqFilter);
         } catch (InvalidJQFilterException e) {
             throw new ConfigException(String.format("'%s' filter is invalid.", name), e);
         }
@@ -88,26 +131,214 @@ public class HttpJsonOutputPluginDelegate
 
     @Override
     public RecordBuffer buildRecordBuffer(PluginTask task, Schema schema, int taskIndex) {
+        final HttpJsonRequestBodyTransformer transformer = buildRequestBodyTransformer(task);
+        final JacksonResponseCollector responseCollector = newResponseCollector(task);
+        final AdaptiveBufferSize bufferSize = newBufferSize(task);
+        final HttpJsonRequestJournal journal =
+                HttpJsonRequestJournal.open(task.getJournalDirectory(), taskIndex);
+        if (task.getFlushMode().equals("streaming")) {
+            final JAXRSJsonNodeTaskRequester taskRequester =
+                    JAXRSJsonNodeTaskRequester.of(
+                            task, taskIndex, newRequestListener(responseCollector, bufferSize));
+            final HttpJsonBisectingRequester bisectingRequester =
+                    newBisectingRequester(
+                            task, taskRequester, transformer::transform, responseCollector);
+            final RequestPipeline<Supplier<CompletableFuture<List<ObjectNode>>>, List<ObjectNode>>
+                    requestPipeline =
+                            newRequestPipeline(
+                                    task,
+                                    Supplier::get,
+                                    responseCollector,
+                                    bufferSize,
+                                    journal,
+                                    taskRequester);
+            return new JacksonStreamingFlushRecordBuffer(
+                    "responses",
+                    newRecordSlicer(
+                            task,
+                            bufferSize,
+                            journal,
+                            r ->
+                                    JacksonSerializedSizeEstimator.estimate(
+                                            r.get(BUFFER_ATTRIBUTE_KEY)),
+                            (records, offset) ->
+                                    requestPipeline.submit(
+                                            requestAsync(
+                                                    task,
+                                                    transformer,
+                                                    bisectingRequester,
+                                                    taskRequester,
+                                                    records.stream()
+                                                            .map(r -> r.get(BUFFER_ATTRIBUTE_KEY))
+                                                            .collect(Collectors.toList()),
+                                                    offset))),
+                    requestPipeline,
+                    responseCollector);
+        }
         return new JacksonCommitWithFlushRecordBuffer(
                 "responses",
                 (records) -> {
-                    final List<JsonNode> actualRecords =
-                            records.map(r -> r.get(BUFFER_ATTRIBUTE_KEY))
-                                    .collect(Collectors.toList());
-                    final Function<List<JsonNode>, ObjectNode> bufferedRecordHandler =
-                            (bufferedRecords) -> {
-                                return requestWithRetry(
-                                        task, buildBufferedBody(task, bufferedRecords));
-                            };
-                    return eachSlice(actualRecords, task.getBufferSize(), bufferedRecordHandler);
+                    final JAXRSJsonNodeTaskRequester taskRequester =
+                            JAXRSJsonNodeTaskRequester.of(
+                                    task,
+                                    taskIndex,
+                                    newRequestListener(responseCollector, bufferSize));
+                    final HttpJsonBisectingRequester bisectingRequester =
+                            newBisectingRequester(
+                                    task, taskRequester, transformer::transform, responseCollector);
+                    try (RequestPipeline<
+                                    Supplier<CompletableFuture<List<ObjectNode>>>, List<ObjectNode>>
+                            requestPipeline =
+                                    newRequestPipeline(
+                                            task,
+                                            Supplier::get,
+                                            responseCollector,
+                                            bufferSize,
+                                            journal,
+                                            taskRequester)) {
+                        final RecordSlicer<JsonNode> recordSlicer =
+                                newRecordSlicer(
+                                        task,
+                                        bufferSize,
+                                        journal,
+                                        JacksonSerializedSizeEstimator::estimate,
+                                        (bufferedRecords, offset) ->
+                                                requestPipeline.submit(
+                                                        requestAsync(
+                                                                task,
+                                                                transformer,
+                                                                bisectingRequester,
+                                                                taskRequester,
+                                                                bufferedRecords,
+                                                                offset)));
+                        records.map(r -> r.get(BUFFER_ATTRIBUTE_KEY)).forEach(recordSlicer::add);
+                        recordSlicer.flush();
+                        requestPipeline.finish();
+                    }
+                },
+                responseCollector,
+                newRecordQueue(task));
+    }
+
+    private HttpJsonRequestBodyTransformer buildRequestBodyTransformer(PluginTask task) {
+        if (!task.getRecordTransformerJq().isPresent()) {
+            return HttpJsonRequestBodyTransformer.ofBatch(
+                    jq, compileJsonQuery("transformer_jq", task.getTransformerJq()));
+        }
+        return HttpJsonRequestBodyTransformer.ofRecord(
+                jq,
+                compileJsonQuery("record_transformer_jq", task.getRecordTransformerJq().get()),
+                task.getEnvelopeJq()
+                        .filter(filter -> !isIdentityFilter(filter))
+                        .map(filter -> compileJsonQuery("envelope_jq", filter)));
+    }
+
+    // NOTE: The direct path slices the records as they are read, but in the commit mode the
+    //       requests are sent only after all of them are read, so 'adaptive_buffer_size' needs
+    //       the records to be sliced at the commit instead.
+    boolean canWriteRecordsDirectly(PluginTask task) {
+        return isIdentityFilter(task.getTransformerJq())
+                && !task.getRecordTransformerJq().isPresent()
+                && !(task.getAdaptiveBufferSize() && task.getFlushMode().equals("commit"));
+    }
+
+    private static boolean isIdentityFilter(String jqFilter) {
+        return jqFilter.trim().equals(".");
+    }
+
+    TransactionalPageOutput buildDirectPageOutput(PluginTask task, Schema schema, int taskIndex) {
+        final JacksonResponseCollector responseCollector = newResponseCollector(task);
+        final AdaptiveBufferSize bufferSize = newBufferSize(task);
+        final HttpJsonRequestJournal journal =
+                HttpJsonRequestJournal.open(task.getJournalDirectory(), taskIndex);
+        final JAXRSJsonNodeTaskRequester taskRequester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task, taskIndex, newRequestListener(responseCollector, bufferSize));
+        final HttpJsonBisectingRequester bisectingRequester =
+                newBisectingRequester(
+                        task,
+                        taskRequester,
+                        records -> OBJECT_MAPPER.createArrayNode().addAll(records),
+                        responseCollector);
+        return new HttpJsonDirectPageOutput(
+                "responses",
+                Exec.getPageReader(schema),
+                new JacksonPageRecordWriter(
+                        schema, buildTimestampFormatter(task), task.getFillJsonNullForEmbulkNull()),
+                bufferSize::get,
+                task.getMaxRequestBytes().orElse(Long.MAX_VALUE),
+                task.getFlushMode().equals("commit"),
+                newRequestPipeline(
+                        task, Supplier::get, responseCollector, bufferSize, journal, taskRequester),
+                (body, offset) ->
+                        () ->
+                                bisectingRequester.request(
+                                        offset,
+                                        () -> taskRequester.requestWithRetryAsync(body, offset),
+                                        () -> readRecords(body)),
+                responseCollector,
+                configMapperFactory.newTaskReport(),
+                newBodyQueue(task),
+                journal);
+    }
+
+    // NOTE: The records are spilled as Smile. The threshold is compared with the estimated json
+    //       size of the records, not with the heap size of the nodes.
+    private static SpillableQueue<ObjectNode> newRecordQueue(PluginTask task) {
+        if (!task.getSpillThresholdBytes().isPresent()) {
+            return SpillableQueue.inMemory();
+        }
+        return new SpillableQueue<>(
+                task.getSpillThresholdBytes().get(),
+                task.getSpillDirectory(),
+                JacksonSerializedSizeEstimator::estimate,
+                record -> {
+                    try {
+                        return SMILE_MAPPER.writeValueAsBytes(record);
+                    } catch (IOException e) {
+                        throw new DataException(e);
+                    }
+                },
+                bytes -> {
+                    try {
+                        return (ObjectNode) SMILE_MAPPER.readTree(bytes);
+                    } catch (IOException e) {
+                        throw new DataException(e);
+                    }
                 });
     }
 
+    private static SpillableQueue<byte[]> newBodyQueue(PluginTask task) {
+        if (!task.getSpillThresholdBytes().isPresent()) {
+            return SpillableQueue.inMemory();
+        }
+        return new SpillableQueue<>(
+                task.getSpillThresholdBytes().get(),
+                task.getSpillDirectory(),
+                body -> body.length,
+                Function.identity(),
+                Function.identity());
+    }
+
+    private static List<JsonNode> readRecords(byte[] body) {
+        final List<JsonNode> records = new ArrayList<>();
+        try {
+            OBJECT_MAPPER.readTree(body).forEach(records::add);
+        } catch (IOException e) {
+            throw new DataException(e);
+        }
+        return records;
+    }
+
     @Override
     public ConfigDiff egestEmbulkData(
             PluginTask task, Schema schema, int taskCount, List<TaskReport> taskReports) {
         progressLogger.finish();
+        TransformerWorkerPool.shutdown();
+        TokenBucket.clearShared();
         taskReports.forEach(report -> logger.info(report.toString()));
+        // NOTE: All tasks are committed, so the journals are no longer needed to resume them.
+        HttpJsonRequestJournal.delete(task.getJournalDirectory(), taskCount);
         return configMapperFactory.newConfigDiff();
     }
 
@@ -118,49 +349,144 @@ public class HttpJsonOutputPluginDelegate
                 .build();
     }
 
-    private <A, R> List<R> eachSlice(List<A> list, int sliceSize, Function<List<A>, R> function) {
-        List<R> resultBuilder = new ArrayList<>();
-        for (int i = 0; i < list.size(); i += sliceSize) {
-            long start = System.currentTimeMillis();
-            R result = function.apply(list.subList(i, Integer.min(i + sliceSize, list.size())));
-            progressLogger.incrementRequestCount();
-            progressLogger.addElapsedTime(System.currentTimeMillis() - start);
-            resultBuilder.add(result);
+    private AdaptiveBufferSize newBufferSize(PluginTask task) {
+        if (!task.getAdaptiveBufferSize()) {
+            return AdaptiveBufferSize.fixed(task.getBufferSize());
         }
-        return Collections.unmodifiableList(resultBuilder);
+        return new AdaptiveBufferSize(
+                task.getBufferSize(),
+                task.getMinBufferSize(),
+                getMaxBufferSize(task),
+                task.getTargetResponseTimeMillis());
     }
 
-    private JsonNode buildBufferedBody(PluginTask task, List<JsonNode> records) {
-        final ArrayNode an = OBJECT_MAPPER.createArrayNode();
-        records.forEach(an::add);
+    private static int getMaxBufferSize(PluginTask task) {
+        return task.getMaxBufferSize().orElse(task.getBufferSize() * 10);
+    }
 
-        try {
-            return jq.jqSingle(task.getTransformerJq(), an);
-        } catch (IllegalJQProcessingException e) {
-            throw new DataException("Failed to apply 'transformer_jq'.", e);
-        }
+    // NOTE: The records acknowledged in the journal are dropped before they are sliced, so that
+    //       the slices of a re-run start right after the acknowledged records.
+    private <T> RecordSlicer<T> newRecordSlicer(
+            PluginTask task,
+            AdaptiveBufferSize bufferSize,
+            HttpJsonRequestJournal journal,
+            ToLongFunction<T> sizeEstimator,
+            BiConsumer<List<T>, Long> sliceConsumer) {
+        return new RecordSlicer<T>(
+                bufferSize::get,
+                task.getMaxRequestBytes().orElse(Long.MAX_VALUE),
+                sizeEstimator,
+                slice -> sliceConsumer.accept(slice, journal.onSliced(slice.size()))) {
+            @Override
+            public void add(T record) {
+                if (!journal.skipsRecord()) {
+                    super.add(record);
+                }
+            }
+        };
+    }
+
+    private JacksonResponseCollector newResponseCollector(PluginTask task) {
+        return new JacksonResponseCollector(
+                JacksonResponseCollector.Retention.of(task.getResponseRetention()),
+                task.getResponseRetentionCount());
+    }
+
+    // NOTE: 'elapsedMillis' is the time of each attempt alone, so the buffer size is not
+    //       shrunk by the rate limits, the backoff or the transformation.
+    private JAXRSRequestListener newRequestListener(
+            JacksonResponseCollector responseCollector, AdaptiveBufferSize bufferSize) {
+        return new JAXRSRequestListener() {
+            @Override
+            public void onResponse(ObjectNode response, long elapsedMillis) {
+                responseCollector.addAttempt(response, elapsedMillis);
+                bufferSize.onResponse(elapsedMillis);
+            }
+
+            @Override
+            public void onRetry() {
+                bufferSize.onRetry();
+            }
+        };
+    }
+
+    private HttpJsonBisectingRequester newBisectingRequester(
+            PluginTask task,
+            JAXRSJsonNodeTaskRequester taskRequester,
+            Function<List<JsonNode>, JsonNode> bodyBuilder,
+            JacksonResponseCollector responseCollector) {
+        return new HttpJsonBisectingRequester(
+                taskRequester::requestWithRetryAsync,
+                bodyBuilder,
+                new HttpJsonRejectSink(
+                        task.getRejectFilePath(),
+                        task.getShowRequestBodyOnError(),
+                        responseCollector));
     }
 
-    private <T> T tryWithJAXRSRetryHelper(PluginTask task, Function<JAXRSRetryHelper, T> f) {
-        try (JAXRSRetryHelper retryHelper =
-                new JAXRSRetryHelper(
-                        task.getMaximumRetries(),
-                        task.getInitialRetryIntervalMillis(),
-                        task.getMaximumRetryIntervalMillis(),
-                        () -> ClientBuilder.newBuilder().build())) {
-            return f.apply(retryHelper);
+    // NOTE: With the blocking engine, the requests are sent from the threads of the pipeline, and
+    //       the futures returned by 'requester' are already completed when they are returned. The
+    //       results are consumed in the order of the slices, so the responses are reported so.
+    private <T> RequestPipeline<T, List<ObjectNode>> newRequestPipeline(
+            PluginTask task,
+            Function<T, CompletableFuture<List<ObjectNode>>> requester,
+            JacksonResponseCollector responseCollector,
+            AdaptiveBufferSize bufferSize,
+            HttpJsonRequestJournal journal,
+            JAXRSJsonNodeTaskRequester taskRequester) {
+        final BiConsumer<List<ObjectNode>, Long> resultConsumer =
+                (responses, elapsedMillis) -> {
+                    responses.forEach(responseCollector::addResponse);
+                    progressLogger.incrementRequestCount();
+                    progressLogger.addElapsedTime(elapsedMillis);
+                    if (task.getAdaptiveBufferSize()) {
+                        progressLogger.setBufferSize(bufferSize.get());
+                    }
+                    journal.onAcknowledged();
+                };
+        final AutoCloseable resource =
+                () -> {
+                    try {
+                        taskRequester.close();
+                    } finally {
+                        journal.close();
+                    }
+                };
+        if (taskRequester.isAsync()) {
+            return RequestPipeline.ofAsync(
+                    task.getMaxConcurrentRequests(), requester, resultConsumer, resource);
         }
+        return new RequestPipeline<>(
+                task.getMaxConcurrentRequests(),
+                request -> TransformerWorkerPool.join(requester.apply(request)),
+                resultConsumer,
+                resource);
+    }
+
+    // NOTE: The slice is transformed on the worker pool while the requests are in flight. The
+    //       records are kept until the request is done, in case it is split.
+    private Supplier<CompletableFuture<List<ObjectNode>>> requestAsync(
+            PluginTask task,
+            HttpJsonRequestBodyTransformer transformer,
+            HttpJsonBisectingRequester bisectingRequester,
+            JAXRSJsonNodeTaskRequester taskRequester,
+            List<JsonNode> records,
+            long offset) {
+        final CompletableFuture<JsonNode> body = transformAsync(task, transformer, records);
+        return () ->
+                bisectingRequester.request(
+                        offset,
+                        () -> taskRequester.requestWithRetryAsync(body, offset),
+                        () -> records);
+    }
+
+    private CompletableFuture<JsonNode> transformAsync(
+            PluginTask task, HttpJsonRequestBodyTransformer transformer, List<JsonNode> records) {
+        return TransformerWorkerPool.supply(
+                getTransformerThreads(task), () -> transformer.transform(records));
     }
 
-    private ObjectNode requestWithRetry(final PluginTask task, final JsonNode json) {
-        return tryWithJAXRSRetryHelper(
-                task,
-                retryHelper ->
-                        retryHelper.requestWithRetry(
-                                JAXRSObjectNodeResponseEntityReader.newInstance(),
-                                JAXRSJsonNodeSingleRequester.builder()
-                                        .task(task)
-                                        .requestBody(json)
-                                        .build()));
+    private static int getTransformerThreads(PluginTask task) {
+        return task.getTransformerThreads().orElse(Runtime.getRuntime().availableProcessors());
     }
 }
@@ -0,0 +1,64 @@
+package org.embulk.output.http_json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import org.embulk.output.http_json.jackson.JacksonResponseCollector;
+import org.embulk.spi.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// NOTE: Receives the records rejected even when sent alone. They are counted in the task report and
+//       appended to 'reject_file_path' if it is set.
+class HttpJsonRejectSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpJsonRejectSink.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final Object fileLock = new Object();
+
+    private final Optional<Path> rejectFile;
+    private final boolean showsRecord;
+    private final JacksonResponseCollector responseCollector;
+
+    HttpJsonRejectSink(
+            Optional<String> rejectFilePath,
+            boolean showsRecord,
+            JacksonResponseCollector responseCollector) {
+        this.rejectFile = rejectFilePath.map(Paths::get);
+        this.showsRecord = showsRecord;
+        this.responseCollector = responseCollector;
+    }
+
+    void reject(JsonNode record, ObjectNode response) {
+        if (showsRecord) {
+            logger.warn("Rejected the record: '{}', Response: '{}'", record, response);
+        } else {
+            logger.warn("Rejected a record. Response: '{}'", response);
+        }
+        responseCollector.addRejectedRecord();
+        rejectFile.ifPresent(path -> append(path, record, response));
+    }
+
+    private static void append(Path path, JsonNode record, ObjectNode response) {
+        final ObjectNode line = OBJECT_MAPPER.createObjectNode();
+        line.set("record", record);
+        line.set("response", response);
+        try {
+            final byte[] bytes =
+                    (OBJECT_MAPPER.writeValueAsString(line) + "\n")
+                            .getBytes(StandardCharsets.UTF_8);
+            synchronized (fileLock) {
+                Files.write(path, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        } catch (IOException e) {
+            throw new DataException("Failed to write the rejected record to " + path, e);
+        }
+    }
+}
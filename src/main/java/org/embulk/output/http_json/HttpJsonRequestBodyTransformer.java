@@ -0,0 +1,70 @@
+package org.embulk.output.http_json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import java.util.List;
+import java.util.Optional;
+import net.thisptr.jackson.jq.JsonQuery;
+import org.embulk.output.http_json.jq.IllegalJQProcessingException;
+import org.embulk.output.http_json.jq.JQ;
+import org.embulk.spi.DataException;
+
+// NOTE: Builds a request body from a slice. With 'record_transformer_jq', each record is
+//       transformed alone and the outputs are passed to 'envelope_jq' as an array. Otherwise
+//       'transformer_jq' is applied to the array of the records.
+class HttpJsonRequestBodyTransformer {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final JQ jq;
+    private final Optional<JsonQuery> recordTransformer;
+    private final Optional<JsonQuery> batchTransformer;
+    private final String batchTransformerName;
+
+    private HttpJsonRequestBodyTransformer(
+            JQ jq,
+            Optional<JsonQuery> recordTransformer,
+            Optional<JsonQuery> batchTransformer,
+            String batchTransformerName) {
+        this.jq = jq;
+        this.recordTransformer = recordTransformer;
+        this.batchTransformer = batchTransformer;
+        this.batchTransformerName = batchTransformerName;
+    }
+
+    static HttpJsonRequestBodyTransformer ofBatch(JQ jq, JsonQuery transformer) {
+        return new HttpJsonRequestBodyTransformer(
+                jq, Optional.empty(), Optional.of(transformer), "transformer_jq");
+    }
+
+    static HttpJsonRequestBodyTransformer ofRecord(
+            JQ jq, JsonQuery recordTransformer, Optional<JsonQuery> envelope) {
+        return new HttpJsonRequestBodyTransformer(
+                jq, Optional.of(recordTransformer), envelope, "envelope_jq");
+    }
+
+    JsonNode transform(List<JsonNode> records) {
+        final ArrayNode an = OBJECT_MAPPER.createArrayNode();
+        if (recordTransformer.isPresent()) {
+            for (JsonNode record : records) {
+                try {
+                    an.addAll(jq.jq(recordTransformer.get(), record));
+                } catch (IllegalJQProcessingException e) {
+                    throw new DataException("Failed to apply 'record_transformer_jq'.", e);
+                }
+            }
+        } else {
+            records.forEach(an::add);
+        }
+        if (!batchTransformer.isPresent()) {
+            return an;
+        }
+        try {
+            return jq.jqSingle(batchTransformer.get(), an);
+        } catch (IllegalJQProcessingException e) {
+            throw new DataException(
+                    String.format("Failed to apply '%s'.", batchTransformerName), e);
+        }
+    }
+}
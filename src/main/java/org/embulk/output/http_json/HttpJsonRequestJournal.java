@@ -0,0 +1,158 @@
+package org.embulk.output.http_json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import org.embulk.spi.DataException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// NOTE: Records how many records of a task are acknowledged, so that a re-run skips them. The
+//       slices are acknowledged in order, so each line is the offset of the last acknowledged
+//       record. The file is opened at the first acknowledgement and synced at most once per
+//       SYNC_INTERVAL_MILLIS, so a crash may send the last records again. The re-run must read the
+//       records in the same order.
+class HttpJsonRequestJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpJsonRequestJournal.class);
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    private final Optional<Path> path;
+    private final long acknowledgedOnOpen;
+    private final ArrayDeque<Long> slicedOffsets = new ArrayDeque<>();
+
+    private long readRecords = 0;
+    private long slicedRecords;
+    private long syncedAtMillis = System.currentTimeMillis();
+    private FileChannel channel;
+
+    private HttpJsonRequestJournal(Optional<Path> path, long acknowledgedOnOpen) {
+        this.path = path;
+        this.acknowledgedOnOpen = acknowledgedOnOpen;
+        this.slicedRecords = acknowledgedOnOpen;
+    }
+
+    static HttpJsonRequestJournal open(Optional<String> journalDirectory, int taskIndex) {
+        if (!journalDirectory.isPresent()) {
+            return new HttpJsonRequestJournal(Optional.empty(), 0);
+        }
+        final Path path = getPath(journalDirectory.get(), taskIndex);
+        try {
+            Files.createDirectories(path.getParent());
+            final long acknowledged = readAcknowledged(path);
+            if (acknowledged > 0) {
+                logger.info(
+                        "Skipping {} records of task {} acknowledged in the journal {}",
+                        acknowledged,
+                        taskIndex,
+                        path);
+            }
+            return new HttpJsonRequestJournal(Optional.of(path), acknowledged);
+        } catch (IOException e) {
+            throw new DataException("Failed to open the journal " + path, e);
+        }
+    }
+
+    static void delete(Optional<String> journalDirectory, int taskCount) {
+        if (!journalDirectory.isPresent()) {
+            return;
+        }
+        for (int taskIndex = 0; taskIndex < taskCount; taskIndex++) {
+            final Path path = getPath(journalDirectory.get(), taskIndex);
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("Failed to delete the journal {}", path, e);
+            }
+        }
+    }
+
+    private static Path getPath(String journalDirectory, int taskIndex) {
+        return Paths.get(journalDirectory, String.format("task-%06d.journal", taskIndex));
+    }
+
+    // NOTE: The last line may be torn by a crash, so only the lines ending with a newline count.
+    private static long readAcknowledged(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        final String journal = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        final int end = journal.lastIndexOf('\n');
+        if (end < 0) {
+            return 0;
+        }
+        final String line = journal.substring(journal.lastIndexOf('\n', end - 1) + 1, end);
+        try {
+            return Long.parseLong(line);
+        } catch (NumberFormatException e) {
+            throw new IOException("Broken journal line: " + line, e);
+        }
+    }
+
+    boolean skipsRecord() {
+        return readRecords++ < acknowledgedOnOpen;
+    }
+
+    // NOTE: Returns the offset of the first record of the slice in the task, which is the same in
+    //       a re-run as long as the records are read in the same order.
+    synchronized long onSliced(int records) {
+        final long offset = slicedRecords;
+        slicedRecords += records;
+        if (path.isPresent()) {
+            slicedOffsets.add(slicedRecords);
+        }
+        return offset;
+    }
+
+    synchronized void onAcknowledged() {
+        if (!path.isPresent()) {
+            return;
+        }
+        final long offset = slicedOffsets.pollFirst();
+        try {
+            if (channel == null) {
+                channel =
+                        FileChannel.open(
+                                path.get(),
+                                StandardOpenOption.CREATE,
+                                StandardOpenOption.WRITE,
+                                StandardOpenOption.APPEND);
+            }
+            final ByteBuffer line =
+                    ByteBuffer.wrap((offset + "\n").getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            if (System.currentTimeMillis() - syncedAtMillis >= SYNC_INTERVAL_MILLIS) {
+                sync();
+            }
+        } catch (IOException e) {
+            throw new DataException("Failed to write the journal", e);
+        }
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        syncedAtMillis = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null || !channel.isOpen()) {
+            return;
+        }
+        try {
+            sync();
+            channel.close();
+        } catch (IOException e) {
+            throw new DataException("Failed to close the journal", e);
+        }
+    }
+}
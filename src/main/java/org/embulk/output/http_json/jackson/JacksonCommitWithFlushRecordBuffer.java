@@ -1,52 +1,59 @@
 package org.embulk.output.http_json.jackson;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import java.lang.reflect.Field;
 import java.util.ArrayDeque;
-import java.util.List;
-import java.util.function.Function;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 import org.embulk.base.restclient.jackson.JacksonTaskReportRecordBuffer;
+import org.embulk.base.restclient.record.ServiceRecord;
 import org.embulk.config.TaskReport;
+import org.embulk.output.http_json.util.SpillableQueue;
 
+// NOTE: The records are moved into 'spillableQueue' as soon as they are buffered, so that only
+//       'spill_threshold_bytes' of them stay in the heap.
 public class JacksonCommitWithFlushRecordBuffer extends JacksonTaskReportRecordBuffer {
 
-    private static final ObjectMapper om = new ObjectMapper();
     private final String taskReportKeyName;
-    private final Function<Stream<ObjectNode>, List<ObjectNode>> requestResponseHandler;
+    private final Consumer<Stream<ObjectNode>> requestHandler;
+    private final JacksonResponseCollector responseCollector;
+    private final SpillableQueue<ObjectNode> spillableQueue;
+
+    private ArrayDeque<ObjectNode> records;
 
     public JacksonCommitWithFlushRecordBuffer(
             String taskReportKeyName,
-            Function<Stream<ObjectNode>, List<ObjectNode>> requestResponseHandler) {
+            Consumer<Stream<ObjectNode>> requestHandler,
+            JacksonResponseCollector responseCollector,
+            SpillableQueue<ObjectNode> spillableQueue) {
         super(taskReportKeyName);
         this.taskReportKeyName = taskReportKeyName;
-        this.requestResponseHandler = requestResponseHandler;
+        this.requestHandler = requestHandler;
+        this.responseCollector = responseCollector;
+        this.spillableQueue = spillableQueue;
+    }
+
+    @Override
+    public void bufferRecord(ServiceRecord serviceRecord) {
+        super.bufferRecord(serviceRecord);
+        spillableQueue.add(getRecords().pollFirst());
     }
 
     @Override
     public TaskReport commitWithTaskReportUpdated(final TaskReport taskReport) {
-        ArrayDeque<ObjectNode> records = forceToGetRecords();
-        List<ObjectNode> jsonList = this.requestResponseHandler.apply(records.stream());
-        ArrayNode an = om.createArrayNode();
-        jsonList.forEach(an::add);
-        taskReport.set(this.taskReportKeyName, an);
-        return taskReport;
+        this.requestHandler.accept(spillableQueue.stream());
+        return responseCollector.writeTo(taskReport, this.taskReportKeyName);
+    }
+
+    @Override
+    public void close() {
+        spillableQueue.close();
+        super.close();
     }
 
-    @SuppressWarnings("unchecked")
-    private ArrayDeque<ObjectNode> forceToGetRecords() {
-        try {
-            Class<?> klass = this.getClass().getSuperclass();
-            Field field = klass.getDeclaredField("records");
-            field.setAccessible(true);
-            return field.get(this) == null ? null : (ArrayDeque<ObjectNode>) field.get(this);
-        } catch (IllegalArgumentException
-                | IllegalAccessException
-                | NoSuchFieldException
-                | SecurityException e) {
-            throw new RuntimeException(e);
+    private ArrayDeque<ObjectNode> getRecords() {
+        if (records == null) {
+            records = JacksonRecordBuffers.forceToGetRecords(this);
         }
+        return records;
     }
 }
@@ -0,0 +1,77 @@
+package org.embulk.output.http_json.jackson;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+// NOTE: The brackets and the separators are written by this buffer instead of JsonGenerator, so
+//       that the last record can be moved to the next array.
+public class JacksonJsonArrayBuffer {
+
+    private static final JsonFactory factory =
+            new MappingJsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    public interface RecordWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final JsonGenerator generator;
+    private int recordCount = 0;
+
+    public JacksonJsonArrayBuffer() throws IOException {
+        this.generator = factory.createGenerator(out);
+        this.generator.setRootValueSeparator(null);
+        out.write('[');
+    }
+
+    // NOTE: Returns the offset of the appended record, which can be passed to 'takeAllButLast'.
+    public int append(RecordWriter recordWriter) throws IOException {
+        int offset = out.size();
+        if (recordCount > 0) {
+            out.write(',');
+        }
+        recordWriter.write(generator);
+        generator.flush();
+        recordCount++;
+        return offset;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public long getArraySize() {
+        // NOTE: Count the closing bracket.
+        return out.size() + 1;
+    }
+
+    public byte[] takeAll() {
+        out.write(']');
+        byte[] array = out.toByteArray();
+        out.reset();
+        out.write('[');
+        recordCount = 0;
+        return array;
+    }
+
+    public byte[] takeAllButLast(int lastRecordOffset) {
+        byte[] buffered = out.toByteArray();
+        out.reset();
+        out.write(buffered, 0, lastRecordOffset);
+        out.write(']');
+        byte[] array = out.toByteArray();
+        out.reset();
+        out.write('[');
+        // NOTE: Skip the separator of the last record.
+        out.write(buffered, lastRecordOffset + 1, buffered.length - lastRecordOffset - 1);
+        recordCount = 1;
+        return array;
+    }
+
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,182 @@
+package org.embulk.output.http_json.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.IOException;
+import java.util.Map;
+import org.msgpack.value.ArrayValue;
+import org.msgpack.value.ExtensionValue;
+import org.msgpack.value.IntegerValue;
+import org.msgpack.value.Value;
+
+// NOTE: 'toJsonNode' and 'write' convert a msgpack Value into the same json as parsing
+//       Value#toJson() does, without the text round trip.
+public class JacksonMsgpackValues {
+
+    private static final JsonNodeFactory NODE_FACTORY = JsonNodeFactory.instance;
+
+    private JacksonMsgpackValues() {}
+
+    // NOTE: The value of a json column. Only arrays and maps are converted by 'toJsonNode', and
+    //       the other values are converted as embulk-base-restclient does.
+    public static JsonNode toColumnJsonNode(final Value v) {
+        if (v.isArrayValue()) {
+            return toJsonNode(v);
+        } else if (v.isBinaryValue()) {
+            return new TextNode(v.toJson());
+        } else if (v.isBooleanValue()) {
+            return v.asBooleanValue().getBoolean() ? BooleanNode.TRUE : BooleanNode.FALSE;
+        } else if (v.isFloatValue()) {
+            return new DoubleNode(v.asFloatValue().toDouble());
+        } else if (v.isIntegerValue()) {
+            return new LongNode(v.asIntegerValue().toLong());
+        } else if (v.isMapValue()) {
+            return toJsonNode(v);
+        } else if (v.isNilValue()) {
+            return NullNode.getInstance();
+        } else if (v.isNumberValue()) {
+            return new DoubleNode(v.asNumberValue().toDouble());
+        } else if (v.isStringValue()) {
+            return new TextNode(v.asStringValue().toString());
+        } else {
+            return new TextNode(v.toJson());
+        }
+    }
+
+    // NOTE: Writes the same json as serializing 'toColumnJsonNode'. The generator must have an
+    //       ObjectCodec to write the values other than arrays and maps.
+    public static void writeColumn(final Value v, final JsonGenerator generator)
+            throws IOException {
+        if (v.isArrayValue() || v.isMapValue()) {
+            write(v, generator);
+        } else {
+            generator.writeTree(toColumnJsonNode(v));
+        }
+    }
+
+    public static JsonNode toJsonNode(final Value v) {
+        switch (v.getValueType()) {
+            case NIL:
+                return NODE_FACTORY.nullNode();
+            case BOOLEAN:
+                return NODE_FACTORY.booleanNode(v.asBooleanValue().getBoolean());
+            case INTEGER:
+                final IntegerValue i = v.asIntegerValue();
+                if (i.isInLongRange()) {
+                    return NODE_FACTORY.numberNode(i.toLong());
+                }
+                return NODE_FACTORY.numberNode(i.toBigInteger());
+            case FLOAT:
+                final double d = v.asFloatValue().toDouble();
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    return NODE_FACTORY.nullNode();
+                }
+                return NODE_FACTORY.numberNode(d);
+            case STRING:
+            case BINARY:
+                return NODE_FACTORY.textNode(v.asRawValue().toString());
+            case ARRAY:
+                final ArrayNode array = NODE_FACTORY.arrayNode();
+                for (Value element : v.asArrayValue()) {
+                    array.add(toJsonNode(element));
+                }
+                return array;
+            case MAP:
+                final ObjectNode object = NODE_FACTORY.objectNode();
+                for (Map.Entry<Value, Value> entry : v.asMapValue().entrySet()) {
+                    object.set(toFieldName(entry.getKey()), toJsonNode(entry.getValue()));
+                }
+                return object;
+            case EXTENSION:
+                final ExtensionValue e = v.asExtensionValue();
+                final ArrayNode extension = NODE_FACTORY.arrayNode();
+                extension.add(e.getType());
+                extension.add(toHexString(e.getData()));
+                return extension;
+            default:
+                throw new IllegalArgumentException("Unknown msgpack value type: " + v);
+        }
+    }
+
+    public static void write(final Value v, final JsonGenerator generator) throws IOException {
+        switch (v.getValueType()) {
+            case NIL:
+                generator.writeNull();
+                return;
+            case BOOLEAN:
+                generator.writeBoolean(v.asBooleanValue().getBoolean());
+                return;
+            case INTEGER:
+                final IntegerValue i = v.asIntegerValue();
+                if (i.isInLongRange()) {
+                    generator.writeNumber(i.toLong());
+                } else {
+                    generator.writeNumber(i.toBigInteger());
+                }
+                return;
+            case FLOAT:
+                final double d = v.asFloatValue().toDouble();
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(d);
+                }
+                return;
+            case STRING:
+            case BINARY:
+                generator.writeString(v.asRawValue().toString());
+                return;
+            case ARRAY:
+                final ArrayValue array = v.asArrayValue();
+                generator.writeStartArray();
+                for (Value element : array) {
+                    write(element, generator);
+                }
+                generator.writeEndArray();
+                return;
+            case MAP:
+                generator.writeStartObject();
+                for (Map.Entry<Value, Value> entry : v.asMapValue().entrySet()) {
+                    generator.writeFieldName(toFieldName(entry.getKey()));
+                    write(entry.getValue(), generator);
+                }
+                generator.writeEndObject();
+                return;
+            case EXTENSION:
+                final ExtensionValue e = v.asExtensionValue();
+                generator.writeStartArray();
+                generator.writeNumber(e.getType());
+                generator.writeString(toHexString(e.getData()));
+                generator.writeEndArray();
+                return;
+            default:
+                throw new IllegalArgumentException("Unknown msgpack value type: " + v);
+        }
+    }
+
+    // NOTE: Value#toJson() writes a raw key as its decoded string and any other key as the
+    //       string of Value#toString().
+    private static String toFieldName(final Value key) {
+        if (key.isRawValue()) {
+            return key.asRawValue().toString();
+        }
+        return key.toString();
+    }
+
+    // NOTE: The same as Value#toJson(), which writes each byte as a signed number without padding.
+    private static String toHexString(final byte[] data) {
+        final StringBuilder sb = new StringBuilder(data.length * 2);
+        for (byte b : data) {
+            sb.append(Integer.toString(b, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,153 @@
+package org.embulk.output.http_json.jackson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import org.embulk.base.restclient.record.SinglePageRecordReader;
+import org.embulk.spi.Column;
+import org.embulk.spi.ColumnVisitor;
+import org.embulk.spi.Schema;
+import org.embulk.util.timestamp.TimestampFormatter;
+import org.msgpack.value.Value;
+
+// NOTE: Writes a record as the same json object as JacksonAllInObjectScope builds, without
+//       building ObjectNode.
+public class JacksonPageRecordWriter {
+
+    private final Schema schema;
+    private final TimestampFormatter timestampFormatter;
+    private final boolean fillsJsonNullForEmbulkNull;
+    private final SerializedString[] columnNames;
+    private final RecordColumnVisitor visitor = new RecordColumnVisitor();
+
+    public JacksonPageRecordWriter(
+            final Schema schema,
+            final TimestampFormatter timestampFormatter,
+            final boolean fillsJsonNullForEmbulkNull) {
+        this.schema = schema;
+        this.timestampFormatter = timestampFormatter;
+        this.fillsJsonNullForEmbulkNull = fillsJsonNullForEmbulkNull;
+        this.columnNames = new SerializedString[schema.getColumnCount()];
+        for (Column column : schema.getColumns()) {
+            this.columnNames[column.getIndex()] = new SerializedString(column.getName());
+        }
+    }
+
+    public void write(final SinglePageRecordReader singlePageRecordReader, final JsonGenerator g)
+            throws IOException {
+        visitor.singlePageRecordReader = singlePageRecordReader;
+        visitor.generator = g;
+        g.writeStartObject();
+        try {
+            schema.visitColumns(visitor);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        g.writeEndObject();
+    }
+
+    private class RecordColumnVisitor implements ColumnVisitor {
+        private SinglePageRecordReader singlePageRecordReader;
+        private JsonGenerator generator;
+
+        @Override
+        public void booleanColumn(final Column column) {
+            try {
+                if (!singlePageRecordReader.isNull(column)) {
+                    generator.writeFieldName(columnNames[column.getIndex()]);
+                    generator.writeBoolean(singlePageRecordReader.getBoolean(column));
+                } else {
+                    writeNullIfNeeded(column);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void longColumn(final Column column) {
+            try {
+                if (!singlePageRecordReader.isNull(column)) {
+                    generator.writeFieldName(columnNames[column.getIndex()]);
+                    generator.writeNumber(singlePageRecordReader.getLong(column));
+                } else {
+                    writeNullIfNeeded(column);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void doubleColumn(final Column column) {
+            try {
+                if (!singlePageRecordReader.isNull(column)) {
+                    generator.writeFieldName(columnNames[column.getIndex()]);
+                    generator.writeNumber(singlePageRecordReader.getDouble(column));
+                } else {
+                    writeNullIfNeeded(column);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void stringColumn(final Column column) {
+            try {
+                if (!singlePageRecordReader.isNull(column)) {
+                    generator.writeFieldName(columnNames[column.getIndex()]);
+                    generator.writeString(singlePageRecordReader.getString(column));
+                } else {
+                    writeNullIfNeeded(column);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void timestampColumn(final Column column) {
+            try {
+                if (!singlePageRecordReader.isNull(column)) {
+                    generator.writeFieldName(columnNames[column.getIndex()]);
+                    if (timestampFormatter == null) {
+                        generator.writeNumber(
+                                singlePageRecordReader.getTimestamp(column).getEpochSecond());
+                    } else {
+                        generator.writeString(
+                                timestampFormatter.format(
+                                        singlePageRecordReader.getTimestamp(column)));
+                    }
+                } else {
+                    writeNullIfNeeded(column);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void jsonColumn(final Column column) {
+            try {
+                if (!singlePageRecordReader.isNull(column)) {
+                    final Value v = singlePageRecordReader.getJson(column);
+                    generator.writeFieldName(columnNames[column.getIndex()]);
+                    JacksonMsgpackValues.writeColumn(v, generator);
+                } else {
+                    writeNullIfNeeded(column);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeNullIfNeeded(final Column column) throws IOException {
+            if (fillsJsonNullForEmbulkNull) {
+                generator.writeFieldName(columnNames[column.getIndex()]);
+                generator.writeNull();
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package org.embulk.output.http_json.jackson;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import org.embulk.base.restclient.jackson.JacksonTaskReportRecordBuffer;
+
+class JacksonRecordBuffers {
+    private JacksonRecordBuffers() {}
+
+    @SuppressWarnings("unchecked")
+    static ArrayDeque<ObjectNode> forceToGetRecords(JacksonTaskReportRecordBuffer recordBuffer) {
+        try {
+            Field field = JacksonTaskReportRecordBuffer.class.getDeclaredField("records");
+            field.setAccessible(true);
+            return field.get(recordBuffer) == null
+                    ? null
+                    : (ArrayDeque<ObjectNode>) field.get(recordBuffer);
+        } catch (IllegalArgumentException
+                | IllegalAccessException
+                | NoSuchFieldException
+                | SecurityException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
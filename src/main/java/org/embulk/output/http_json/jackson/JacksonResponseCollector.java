@@ -0,0 +1,145 @@
+package org.embulk.output.http_json.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import org.embulk.config.TaskReport;
+
+// NOTE: The summary counts every attempt of the requests in a task, not every slice. The responses
+// are retained in
+//       the order of the records as 'response_retention' allows, except that 'errors' retains the
+//       failed attempts.
+public class JacksonResponseCollector {
+
+    public enum Retention {
+        ALL,
+        NONE,
+        SUMMARY,
+        FIRST,
+        SAMPLED,
+        ERRORS;
+
+        public static Retention of(String value) {
+            return Retention.valueOf(value.toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private static final ObjectMapper om = new ObjectMapper();
+
+    private final Retention retention;
+    private final int maxRetainedResponses;
+    private final List<ObjectNode> retainedResponses = new ArrayList<>();
+    private final Map<Integer, Long> statusCodeCounts = new TreeMap<>();
+    private final Random random = new Random();
+
+    private long requestCount = 0;
+    private long responseCount = 0;
+    private long totalElapsedMillis = 0;
+    private long minElapsedMillis = Long.MAX_VALUE;
+    private long maxElapsedMillis = 0;
+    private long rejectedRecordCount = 0;
+
+    public JacksonResponseCollector(Retention retention, int maxRetainedResponses) {
+        this.retention = retention;
+        this.maxRetainedResponses = maxRetainedResponses;
+    }
+
+    // NOTE: Called for every attempt, including the retried ones, as soon as it is done.
+    public synchronized void addAttempt(ObjectNode response, long elapsedMillis) {
+        requestCount++;
+        totalElapsedMillis += elapsedMillis;
+        minElapsedMillis = Math.min(minElapsedMillis, elapsedMillis);
+        maxElapsedMillis = Math.max(maxElapsedMillis, elapsedMillis);
+        JsonNode statusCode = response.get("status_code");
+        if (statusCode != null) {
+            statusCodeCounts.merge(statusCode.asInt(), 1L, Long::sum);
+        }
+        if (retention == Retention.ERRORS) {
+            retainError(response);
+        }
+    }
+
+    // NOTE: Called for the final responses of the requests, in the order of their records.
+    public synchronized void addResponse(ObjectNode response) {
+        responseCount++;
+        retain(response);
+    }
+
+    public synchronized void addRejectedRecord() {
+        rejectedRecordCount++;
+    }
+
+    private void retain(ObjectNode response) {
+        switch (retention) {
+            case ALL:
+                retainedResponses.add(response);
+                return;
+            case FIRST:
+                if (retainedResponses.size() < maxRetainedResponses) {
+                    retainedResponses.add(response);
+                }
+                return;
+            case SAMPLED:
+                // NOTE: Reservoir sampling.
+                if (retainedResponses.size() < maxRetainedResponses) {
+                    retainedResponses.add(response);
+                } else {
+                    long i = (long) (random.nextDouble() * responseCount);
+                    if (i < maxRetainedResponses) {
+                        retainedResponses.set((int) i, response);
+                    }
+                }
+                return;
+            default:
+                return;
+        }
+    }
+
+    private void retainError(ObjectNode response) {
+        JsonNode statusCodeClass = response.get("status_code_class");
+        if (retainedResponses.size() < maxRetainedResponses
+                && statusCodeClass != null
+                && statusCodeClass.asInt() != 200) {
+            retainedResponses.add(response);
+        }
+    }
+
+    public synchronized TaskReport writeTo(TaskReport taskReport, String taskReportKeyName) {
+        if (retention == Retention.NONE) {
+            return taskReport;
+        }
+        if (retention != Retention.SUMMARY) {
+            ArrayNode an = om.createArrayNode();
+            retainedResponses.forEach(an::add);
+            taskReport.set(taskReportKeyName, an);
+        }
+        // NOTE: The default 'all' keeps the task report in the shape it had before the summary.
+        if (retention != Retention.ALL) {
+            taskReport.set(taskReportKeyName + "_summary", buildSummary());
+        }
+        return taskReport;
+    }
+
+    private ObjectNode buildSummary() {
+        ObjectNode summary = om.createObjectNode();
+        summary.put("request_count", requestCount);
+        summary.put("rejected_record_count", rejectedRecordCount);
+        ObjectNode statusCodes = summary.putObject("status_code_counts");
+        statusCodeCounts.forEach((code, count) -> statusCodes.put(code.toString(), count));
+        if (requestCount > 0) {
+            ObjectNode latency = summary.putObject("latency_millis");
+            latency.put("min", minElapsedMillis);
+            latency.put("max", maxElapsedMillis);
+            latency.put("avg", totalElapsedMillis / requestCount);
+            latency.put("total", totalElapsedMillis);
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,66 @@
+package org.embulk.output.http_json.jackson;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Iterator;
+import java.util.Map;
+
+// NOTE: Estimates the size of the json serialized by Jackson without serializing it. The estimate
+//       is approximate for some numbers, such as NaN.
+public class JacksonSerializedSizeEstimator {
+    private JacksonSerializedSizeEstimator() {}
+
+    public static long estimate(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return 4;
+        }
+        if (node.isObject()) {
+            long size = 2;
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                size += quotedLength(field.getKey()) + 1 + estimate(field.getValue());
+            }
+            return size + Math.max(0, node.size() - 1);
+        }
+        if (node.isArray()) {
+            long size = 2;
+            for (JsonNode element : node) {
+                size += estimate(element);
+            }
+            return size + Math.max(0, node.size() - 1);
+        }
+        if (node.isTextual()) {
+            return quotedLength(node.textValue());
+        }
+        if (node.isBinary()) {
+            return node.asText().length() + 2;
+        }
+        if (node.isBoolean()) {
+            return node.booleanValue() ? 4 : 5;
+        }
+        return node.asText().length();
+    }
+
+    private static long quotedLength(String s) {
+        long length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\' || c == '\b' || c == '\f' || c == '\n' || c == '\r'
+                    || c == '\t') {
+                length += 2;
+            } else if (c < 0x20) {
+                length += 6;
+            } else if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isSurrogate(c)) {
+                // NOTE: Jackson 2.6 escapes each half of a surrogate pair into '\\uXXXX'.
+                length += 6;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
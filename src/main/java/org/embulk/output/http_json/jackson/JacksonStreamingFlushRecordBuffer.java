@@ -0,0 +1,59 @@
+package org.embulk.output.http_json.jackson;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayDeque;
+import org.embulk.base.restclient.jackson.JacksonTaskReportRecordBuffer;
+import org.embulk.base.restclient.record.ServiceRecord;
+import org.embulk.config.TaskReport;
+import org.embulk.output.http_json.util.RecordSlicer;
+import org.embulk.output.http_json.util.RequestPipeline;
+
+// NOTE: Unlike JacksonCommitWithFlushRecordBuffer, each slice is submitted as soon as it is closed,
+//       so the memory usage does not grow with the task.
+public class JacksonStreamingFlushRecordBuffer extends JacksonTaskReportRecordBuffer {
+
+    private final String taskReportKeyName;
+    private final RecordSlicer<ObjectNode> recordSlicer;
+    private final RequestPipeline<?, ?> requestPipeline;
+    private final JacksonResponseCollector responseCollector;
+
+    private ArrayDeque<ObjectNode> records;
+
+    public JacksonStreamingFlushRecordBuffer(
+            String taskReportKeyName,
+            RecordSlicer<ObjectNode> recordSlicer,
+            RequestPipeline<?, ?> requestPipeline,
+            JacksonResponseCollector responseCollector) {
+        super(taskReportKeyName);
+        this.taskReportKeyName = taskReportKeyName;
+        this.recordSlicer = recordSlicer;
+        this.requestPipeline = requestPipeline;
+        this.responseCollector = responseCollector;
+    }
+
+    @Override
+    public void bufferRecord(ServiceRecord serviceRecord) {
+        super.bufferRecord(serviceRecord);
+        recordSlicer.add(getRecords().pollFirst());
+    }
+
+    @Override
+    public TaskReport commitWithTaskReportUpdated(final TaskReport taskReport) {
+        recordSlicer.flush();
+        requestPipeline.finish();
+        return responseCollector.writeTo(taskReport, this.taskReportKeyName);
+    }
+
+    @Override
+    public void close() {
+        requestPipeline.close();
+        super.close();
+    }
+
+    private ArrayDeque<ObjectNode> getRecords() {
+        if (records == null) {
+            records = JacksonRecordBuffers.forceToGetRecords(this);
+        }
+        return records;
+    }
+}
@@ -1,20 +1,12 @@
 package org.embulk.output.http_json.jackson.scope;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.BooleanNode;
-import com.fasterxml.jackson.databind.node.DoubleNode;
-import com.fasterxml.jackson.databind.node.LongNode;
-import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.TextNode;
-import java.io.IOException;
 import org.embulk.base.restclient.jackson.scope.JacksonObjectScopeBase;
 import org.embulk.base.restclient.record.SinglePageRecordReader;
+import org.embulk.output.http_json.jackson.JacksonMsgpackValues;
 import org.embulk.spi.Column;
 import org.embulk.spi.ColumnVisitor;
-import org.embulk.spi.DataException;
 import org.embulk.util.timestamp.TimestampFormatter;
 import org.msgpack.value.Value;
 
@@ -110,43 +102,13 @@ public class JacksonAllInObjectScope extends JacksonObjectScopeBase {
                             public void jsonColumn(final Column column) {
                                 if (!singlePageRecordReader.isNull(column)) {
                                     final Value v = singlePageRecordReader.getJson(column);
-                                    final JsonNode j;
-                                    try {
-                                        j = valueToJsonNode(v);
-                                    } catch (IOException e) {
-                                        throw new DataException("Failed to parse json value.", e);
-                                    }
-                                    resultObject.set(column.getName(), j);
+                                    resultObject.set(
+                                            column.getName(),
+                                            JacksonMsgpackValues.toColumnJsonNode(v));
                                 } else if (fillsJsonNullForEmbulkNull) {
                                     resultObject.putNull(column.getName());
                                 }
                             }
-
-                            private JsonNode valueToJsonNode(final Value v) throws IOException {
-                                if (v.isArrayValue()) {
-                                    return (ArrayNode) OBJECT_MAPPER.readTree(v.toJson());
-                                } else if (v.isBinaryValue()) {
-                                    return new TextNode(v.toJson());
-                                } else if (v.isBooleanValue()) {
-                                    return v.asBooleanValue().getBoolean()
-                                            ? BooleanNode.TRUE
-                                            : BooleanNode.FALSE;
-                                } else if (v.isFloatValue()) {
-                                    return new DoubleNode(v.asFloatValue().toDouble());
-                                } else if (v.isIntegerValue()) {
-                                    return new LongNode(v.asIntegerValue().toLong());
-                                } else if (v.isMapValue()) {
-                                    return (ObjectNode) OBJECT_MAPPER.readTree(v.toJson());
-                                } else if (v.isNilValue()) {
-                                    return NullNode.getInstance();
-                                } else if (v.isNumberValue()) {
-                                    return new DoubleNode(v.asNumberValue().toDouble());
-                                } else if (v.isStringValue()) {
-                                    return new TextNode(v.asStringValue().toString());
-                                } else {
-                                    return new TextNode(v.toJson());
-                                }
-                            }
                         });
         return resultObject;
     }
@@ -1,8 +1,10 @@
 package org.embulk.output.http_json.jaxrs;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.net.URI;
 import java.util.Date;
@@ -10,6 +12,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.Link;
@@ -19,29 +22,76 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.NewCookie;
 import javax.ws.rs.core.Response;
 
+// NOTE: Reads the entity once and keeps it with the parsed json, so that the conditions and the
+//       reader share them. With 'readsEntity' false, the entity of a 2xx response is drained
+//       unread.
 public class JAXRSEntityRecycleResponse extends Response {
 
     private final ObjectMapper mapper;
     private final Response delegate;
     private final Optional<String> body;
 
-    private JAXRSEntityRecycleResponse(Response delegate) {
+    private JsonNode parsedBody;
+    private ObjectNode responseJson;
+
+    private JAXRSEntityRecycleResponse(Response delegate, boolean readsEntity) {
         this.mapper = new ObjectMapper();
         this.delegate = delegate;
-        if (delegate.hasEntity()) {
-            this.body = Optional.of(delegate.readEntity(String.class));
-        } else {
+        if (!delegate.hasEntity()) {
             this.body = Optional.empty();
+        } else if (!readsEntity
+                && delegate.getStatusInfo().getFamily() == Status.Family.SUCCESSFUL) {
+            drainEntity(delegate);
+            this.body = Optional.empty();
+        } else {
+            this.body = Optional.of(delegate.readEntity(String.class));
         }
     }
 
     public static JAXRSEntityRecycleResponse of(Response delegate) {
-        return new JAXRSEntityRecycleResponse(delegate);
+        return new JAXRSEntityRecycleResponse(delegate, true);
+    }
+
+    public static JAXRSEntityRecycleResponse of(Response delegate, boolean readsEntity) {
+        return new JAXRSEntityRecycleResponse(delegate, readsEntity);
+    }
+
+    private static void drainEntity(Response delegate) {
+        // NOTE: Consume the entity to the end instead of just closing it, so that the connection
+        //       can be returned to the pool and reused.
+        try (InputStream in = delegate.readEntity(InputStream.class)) {
+            byte[] discarded = new byte[8192];
+            while (in.read(discarded) != -1) {
+                // Discard.
+            }
+        } catch (IOException e) {
+            throw new ProcessingException(e);
+        }
+    }
+
+    public ObjectNode toObjectNode() throws IOException {
+        if (responseJson == null) {
+            ObjectNode json = mapper.createObjectNode();
+            json.put("status_code", getStatus());
+            json.put("status_code_class", (getStatus() / 100) * 100);
+            if (body.isPresent()) {
+                json.set("response_body", getParsedBody());
+            }
+            responseJson = json;
+        }
+        return responseJson;
+    }
+
+    private JsonNode getParsedBody() throws IOException {
+        if (parsedBody == null) {
+            parsedBody = mapper.readTree(body.get());
+        }
+        return parsedBody;
     }
 
     @Override
     public Object getEntity() {
-        return body.get().isEmpty() ? null : body.get();
+        return body.isPresent() && !body.get().isEmpty() ? body.get() : null;
     }
 
     @Override
@@ -52,7 +102,7 @@ public class JAXRSEntityRecycleResponse extends Response {
         }
         if (entityType.equals(ObjectNode.class)) {
             try {
-                return (T) mapper.readTree((String) getEntity());
+                return (T) getParsedBody();
             } catch (IOException e) {
                 throw new IllegalStateException(e);
             }
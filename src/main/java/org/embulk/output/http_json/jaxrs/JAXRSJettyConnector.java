@@ -0,0 +1,200 @@
+package org.embulk.output.http_json.jaxrs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.HttpHeaders;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.util.Jetty;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.ClientRequest;
+import org.glassfish.jersey.client.ClientResponse;
+import org.glassfish.jersey.client.spi.AsyncConnectorCallback;
+import org.glassfish.jersey.client.spi.Connector;
+import org.glassfish.jersey.message.internal.Statuses;
+
+// NOTE: A Jersey connector on the Jetty HTTP client. Asynchronous requests hold no thread in
+//       flight. The bodies are buffered, so the request has a Content-Length.
+class JAXRSJettyConnector implements Connector {
+
+    // NOTE: The response bodies are read into memory, so a larger one fails the request.
+    private static final int MAX_RESPONSE_BYTES = 64 * 1024 * 1024;
+
+    private final HttpClient httpClient;
+    private final long readTimeoutMillis;
+    private final int maxResponseBytes;
+
+    JAXRSJettyConnector(HttpClient httpClient, long readTimeoutMillis) {
+        this(httpClient, readTimeoutMillis, MAX_RESPONSE_BYTES);
+    }
+
+    JAXRSJettyConnector(HttpClient httpClient, long readTimeoutMillis, int maxResponseBytes) {
+        this.httpClient = httpClient;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.maxResponseBytes = maxResponseBytes;
+    }
+
+    @Override
+    public ClientResponse apply(ClientRequest request) {
+        try {
+            return send(request).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException(e);
+        } catch (ExecutionException e) {
+            throw toProcessingException(e.getCause());
+        }
+    }
+
+    @Override
+    public Future<?> apply(ClientRequest request, AsyncConnectorCallback callback) {
+        final CompletableFuture<ClientResponse> response;
+        try {
+            response = send(request);
+        } catch (ProcessingException e) {
+            callback.failure(e);
+            final CompletableFuture<ClientResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        return response.whenComplete(
+                (clientResponse, t) -> {
+                    if (t == null) {
+                        callback.response(clientResponse);
+                    } else {
+                        callback.failure(toProcessingException(t));
+                    }
+                });
+    }
+
+    private CompletableFuture<ClientResponse> send(ClientRequest request) {
+        final Request jettyRequest =
+                httpClient
+                        .newRequest(request.getUri())
+                        .method(request.getMethod())
+                        .followRedirects(
+                                request.resolveProperty(ClientProperties.FOLLOW_REDIRECTS, true))
+                        .idleTimeout(readTimeoutMillis, TimeUnit.MILLISECONDS);
+        // NOTE: The headers are complete only after the entity is written.
+        final Optional<byte[]> body = writeEntity(request);
+        for (Map.Entry<String, List<String>> header : request.getStringHeaders().entrySet()) {
+            if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getKey())) {
+                header.getValue().forEach(value -> jettyRequest.header(header.getKey(), value));
+            }
+        }
+        body.ifPresent(bytes -> jettyRequest.content(new BytesContentProvider(bytes)));
+
+        final CompletableFuture<ClientResponse> future = new CompletableFuture<>();
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        jettyRequest.send(
+                new Response.Listener.Adapter() {
+                    @Override
+                    public void onContent(Response response, ByteBuffer buffer) {
+                        if (content.size() + buffer.remaining() > maxResponseBytes) {
+                            response.abort(
+                                    new ProcessingException(
+                                            String.format(
+                                                    "The response body exceeds %d bytes.",
+                                                    maxResponseBytes)));
+                            return;
+                        }
+                        if (buffer.hasArray()) {
+                            content.write(
+                                    buffer.array(),
+                                    buffer.arrayOffset() + buffer.position(),
+                                    buffer.remaining());
+                            buffer.position(buffer.limit());
+                        } else {
+                            final byte[] bytes = new byte[buffer.remaining()];
+                            buffer.get(bytes);
+                            content.write(bytes, 0, bytes.length);
+                        }
+                    }
+
+                    @Override
+                    public void onComplete(Result result) {
+                        if (result.isFailed()) {
+                            future.completeExceptionally(result.getFailure());
+                            return;
+                        }
+                        try {
+                            future.complete(
+                                    toClientResponse(
+                                            request, result.getResponse(), content.toByteArray()));
+                        } catch (RuntimeException e) {
+                            future.completeExceptionally(e);
+                        }
+                    }
+                });
+        return future;
+    }
+
+    // NOTE: A body that is already serialized is sent as it is unless an interceptor changes it.
+    private static Optional<byte[]> writeEntity(ClientRequest request) {
+        if (!request.hasEntity()) {
+            return Optional.empty();
+        }
+        if (request.getEntity() instanceof byte[]
+                && !request.getWriterInterceptors().iterator().hasNext()) {
+            return Optional.of((byte[]) request.getEntity());
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.setStreamProvider(contentLength -> out);
+        try {
+            request.writeEntity();
+        } catch (IOException e) {
+            throw new ProcessingException("Failed to write the request body.", e);
+        }
+        return Optional.of(out.toByteArray());
+    }
+
+    private static ClientResponse toClientResponse(
+            ClientRequest request, Response response, byte[] content) {
+        final ClientResponse clientResponse =
+                new ClientResponse(
+                        response.getReason() == null
+                                ? Statuses.from(response.getStatus())
+                                : Statuses.from(response.getStatus(), response.getReason()),
+                        request);
+        for (HttpField field : response.getHeaders()) {
+            clientResponse.getHeaders().add(field.getName(), field.getValue());
+        }
+        clientResponse.setEntityStream(new ByteArrayInputStream(content));
+        return clientResponse;
+    }
+
+    private static ProcessingException toProcessingException(Throwable t) {
+        if (t instanceof ProcessingException) {
+            return (ProcessingException) t;
+        }
+        return new ProcessingException(t.getMessage(), t);
+    }
+
+    @Override
+    public String getName() {
+        return "Jetty HttpClient " + Jetty.VERSION;
+    }
+
+    @Override
+    public void close() {
+        try {
+            httpClient.stop();
+        } catch (Exception e) {
+            throw new ProcessingException("Failed to stop the HTTP client.", e);
+        }
+    }
+}
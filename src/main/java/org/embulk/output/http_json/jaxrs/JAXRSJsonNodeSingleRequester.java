@@ -1,18 +1,34 @@
 package org.embulk.output.http_json.jaxrs;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
-import org.embulk.config.ConfigException;
 import org.embulk.output.http_json.HttpJsonOutputPlugin.PluginTask;
 import org.embulk.output.http_json.jq.IllegalJQProcessingException;
 import org.embulk.output.http_json.jq.InvalidJQFilterException;
+import org.embulk.output.http_json.util.TokenBucket;
 import org.embulk.spi.DataException;
 import org.embulk.util.retryhelper.jaxrs.JAXRSSingleRequester;
 import org.slf4j.Logger;
@@ -23,9 +39,21 @@ public class JAXRSJsonNodeSingleRequester extends JAXRSSingleRequester {
     private static final Logger logger =
             LoggerFactory.getLogger(JAXRSJsonNodeSingleRequester.class);
 
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     public static class Builder {
         private PluginTask task;
         private JsonNode requestBody;
+        private byte[] serializedRequestBody;
+        private JAXRSResponseJqCondition successCondition;
+        private JAXRSResponseJqCondition retryableCondition;
+        private Optional<JAXRSResponseJqCondition> splitCondition = Optional.empty();
+        private boolean readsResponseBody = true;
+        private JAXRSRequestListener listener;
+        private Optional<TokenBucket> requestRateLimiter = Optional.empty();
+        private Optional<TokenBucket> byteRateLimiter = Optional.empty();
+        private Optional<String> requestId = Optional.empty();
 
         private Builder() {}
 
@@ -39,9 +67,61 @@ public class JAXRSJsonNodeSingleRequester extends JAXRSSingleRequester {
             return this;
         }
 
+        public Builder serializedRequestBody(byte[] serializedRequestBody) {
+            this.serializedRequestBody = serializedRequestBody;
+            return this;
+        }
+
+        public Builder successCondition(JAXRSResponseJqCondition successCondition) {
+            this.successCondition = successCondition;
+            return this;
+        }
+
+        public Builder retryableCondition(JAXRSResponseJqCondition retryableCondition) {
+            this.retryableCondition = retryableCondition;
+            return this;
+        }
+
+        public Builder splitCondition(Optional<JAXRSResponseJqCondition> splitCondition) {
+            this.splitCondition = splitCondition;
+            return this;
+        }
+
+        public Builder readsResponseBody(boolean readsResponseBody) {
+            this.readsResponseBody = readsResponseBody;
+            return this;
+        }
+
+        public Builder listener(JAXRSRequestListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public Builder requestRateLimiter(Optional<TokenBucket> requestRateLimiter) {
+            this.requestRateLimiter = requestRateLimiter;
+            return this;
+        }
+
+        public Builder byteRateLimiter(Optional<TokenBucket> byteRateLimiter) {
+            this.byteRateLimiter = byteRateLimiter;
+            return this;
+        }
+
+        // NOTE: The id of the records of the request in the transaction, which is a part of the
+        //       idempotency key.
+        public Builder requestId(String requestId) {
+            this.requestId = Optional.of(requestId);
+            return this;
+        }
+
         public JAXRSJsonNodeSingleRequester build() {
-            if (task == null || requestBody == null) {
-                throw new IllegalStateException("task and requestBody must be set.");
+            if (task == null
+                    || (requestBody == null && serializedRequestBody == null)
+                    || successCondition == null
+                    || retryableCondition == null
+                    || listener == null) {
+                throw new IllegalStateException(
+                        "task, requestBody or serializedRequestBody, successCondition, retryableCondition and listener must be set.");
             }
             return new JAXRSJsonNodeSingleRequester(this);
         }
@@ -51,28 +131,72 @@ public class JAXRSJsonNodeSingleRequester extends JAXRSSingleRequester {
         return new Builder();
     }
 
-    private final JsonNode requestBody;
+    private final JsonNode jsonRequestBody;
+    private final byte[] serializedRequestBody;
+    private final byte[] requestBody;
+    private final boolean isCompressed;
     private final String endpoint;
     private final String method;
     private final MultivaluedMap<String, Object> headers;
     private final JAXRSResponseJqCondition successCondition;
     private final JAXRSResponseJqCondition retryableCondition;
+    private final Optional<JAXRSResponseJqCondition> splitCondition;
     private final boolean showRequestBodyOnError;
+    private final boolean readsResponseBody;
+    private final JAXRSRequestListener listener;
+    private final Optional<TokenBucket> requestRateLimiter;
+    private final Optional<TokenBucket> byteRateLimiter;
 
     private JAXRSJsonNodeSingleRequester(Builder builder) {
-        this.requestBody = builder.requestBody;
+        this.requestBody = buildRequestBody(builder);
+        this.isCompressed =
+                JAXRSRequestCompression.of(builder.task.getRequestCompression())
+                        != JAXRSRequestCompression.NONE;
+        // NOTE: The uncompressed body is kept only to be shown on error.
+        final boolean keepsUncompressedBody =
+                isCompressed && builder.task.getShowRequestBodyOnError();
+        this.jsonRequestBody = keepsUncompressedBody ? builder.requestBody : null;
+        this.serializedRequestBody = keepsUncompressedBody ? builder.serializedRequestBody : null;
         this.endpoint = buildEndpoint(builder.task);
         this.method = builder.task.getMethod();
-        this.headers = buildHeaders(builder.task);
+        this.headers = buildHeaders(builder.task, builder.requestId);
+        this.successCondition = builder.successCondition;
+        this.retryableCondition = builder.retryableCondition;
+        this.splitCondition = builder.splitCondition;
+        this.showRequestBodyOnError = builder.task.getShowRequestBodyOnError();
+        this.readsResponseBody = builder.readsResponseBody;
+        this.listener = builder.listener;
+        this.requestRateLimiter = builder.requestRateLimiter;
+        this.byteRateLimiter = builder.byteRateLimiter;
+    }
+
+    // NOTE: The body is serialized and compressed once into a byte array, which is held until the
+    //       request is done, so that the retries, the rate limit and the idempotency key use the
+    //       same bytes. The connector sends the array as it is.
+    private byte[] buildRequestBody(Builder builder) {
+        JAXRSRequestCompression compression =
+                JAXRSRequestCompression.of(builder.task.getRequestCompression());
         try {
-            this.successCondition =
-                    new JAXRSResponseJqCondition(builder.task.getSuccessConditionJq());
-            this.retryableCondition =
-                    new JAXRSResponseJqCondition(builder.task.getRetryableConditionJq());
-        } catch (InvalidJQFilterException e) {
-            throw new ConfigException(e);
+            if (compression == JAXRSRequestCompression.NONE) {
+                return builder.requestBody == null
+                        ? builder.serializedRequestBody
+                        : mapper.writeValueAsBytes(builder.requestBody);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (OutputStream out =
+                    compression.compress(bytes, builder.task.getRequestCompressionLevel())) {
+                if (builder.requestBody != null) {
+                    try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                        mapper.writeTree(generator, builder.requestBody);
+                    }
+                } else {
+                    out.write(builder.serializedRequestBody);
+                }
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new DataException("Failed to serialize the request body.", e);
         }
-        this.showRequestBodyOnError = builder.task.getShowRequestBodyOnError();
     }
 
     private String buildEndpoint(PluginTask task) {
@@ -85,34 +209,139 @@ public class JAXRSJsonNodeSingleRequester extends JAXRSSingleRequester {
         return endpointBuilder.toString();
     }
 
-    private MultivaluedMap<String, Object> buildHeaders(PluginTask task) {
+    private MultivaluedMap<String, Object> buildHeaders(
+            PluginTask task, Optional<String> requestId) {
         MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
         task.getHeaders().forEach(h -> h.forEach((k, v) -> headers.add(k, v)));
+        if (task.getIdempotencyKeyHeader().isPresent() && requestId.isPresent()) {
+            headers.add(task.getIdempotencyKeyHeader().get(), buildIdempotencyKey(requestId.get()));
+        }
         headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+        JAXRSRequestCompression.of(task.getRequestCompression())
+                .getContentEncoding()
+                .ifPresent(encoding -> headers.add(HttpHeaders.CONTENT_ENCODING, encoding));
         return headers;
     }
 
+    // NOTE: The digest tells apart different records sent with the same request id.
+    private String buildIdempotencyKey(String requestId) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder key = new StringBuilder(requestId).append('-');
+            for (byte b : digest.digest(requestBody)) {
+                key.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // NOTE: Retries take tokens as well.
+    private void acquireTokens() {
+        requestRateLimiter.ifPresent(limiter -> limiter.acquire(1));
+        byteRateLimiter.ifPresent(limiter -> limiter.acquire(getRequestBodySize()));
+    }
+
+    // NOTE: Returns the nanoseconds the caller must delay the request by.
+    public long reserveTokens() {
+        long waitNanos = requestRateLimiter.map(limiter -> limiter.reserve(1)).orElse(0L);
+        if (byteRateLimiter.isPresent()) {
+            waitNanos = Math.max(waitNanos, byteRateLimiter.get().reserve(getRequestBodySize()));
+        }
+        return waitNanos;
+    }
+
+    private long getRequestBodySize() {
+        return requestBody.length;
+    }
+
+    private Invocation.Builder buildInvocation(Client client) {
+        return client.target(endpoint).request().headers(headers);
+    }
+
+    private Entity<byte[]> buildEntity() {
+        return Entity.entity(requestBody, MediaType.APPLICATION_JSON);
+    }
+
     private Response doRequestOnce(Client client) {
-        Entity<String> entity = Entity.entity(requestBody.toString(), MediaType.APPLICATION_JSON);
-        Response delegate =
-                client.target(endpoint).request().headers(headers).method(method, entity);
-        return JAXRSEntityRecycleResponse.of(delegate);
+        acquireTokens();
+        long startNanos = System.nanoTime();
+        Response delegate = buildInvocation(client).method(method, buildEntity());
+        return onResponse(delegate, startNanos);
+    }
+
+    private JAXRSEntityRecycleResponse onResponse(Response delegate, long startNanos) {
+        JAXRSEntityRecycleResponse response =
+                JAXRSEntityRecycleResponse.of(delegate, readsResponseBody);
+        listener.onResponse(
+                toResponseJson(response),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return response;
+    }
+
+    // NOTE: The body of an error response may not be json.
+    private static ObjectNode toResponseJson(JAXRSEntityRecycleResponse response) {
+        try {
+            return response.toObjectNode();
+        } catch (IOException e) {
+            ObjectNode json = mapper.createObjectNode();
+            json.put("status_code", response.getStatus());
+            json.put("status_code_class", (response.getStatus() / 100) * 100);
+            json.put("response_body", response.readEntity(String.class));
+            return json;
+        }
     }
 
     @Override
     public Response requestOnce(Client client) {
-        Response response = doRequestOnce(client);
+        return checkResponse(doRequestOnce(client));
+    }
+
+    // NOTE: The tokens must be reserved by 'reserveTokens' beforehand.
+    public CompletableFuture<Response> requestOnceAsync(Client client) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        long startNanos = System.nanoTime();
+        buildInvocation(client)
+                .async()
+                .method(
+                        method,
+                        buildEntity(),
+                        new InvocationCallback<Response>() {
+                            @Override
+                            public void completed(Response delegate) {
+                                try {
+                                    future.complete(
+                                            checkResponse(onResponse(delegate, startNanos)));
+                                } catch (RuntimeException e) {
+                                    future.completeExceptionally(e);
+                                }
+                            }
+
+                            @Override
+                            public void failed(Throwable throwable) {
+                                future.completeExceptionally(throwable);
+                            }
+                        });
+        return future;
+    }
+
+    private Response checkResponse(Response response) {
         // NOTE: If an exception is thrown by the exception handling in the link below, the
         //       error message will be poor, so to avoid this, put the exception handling
         //       here.
         // https://github.com/embulk/embulk-util-retryhelper/blob/402412d/embulk-util-retryhelper-jaxrs/src/main/java/org/embulk/util/retryhelper/jaxrs/JAXRSRetryHelper.java#L107-L109
         try {
             if (!successCondition.isSatisfied(response)) {
+                if (isSplitConditionSatisfied(response)) {
+                    throw new JAXRSSplitRequestException(
+                            JAXRSResponseJson.convertResponseToObjectNode(response), response);
+                }
                 if (showRequestBodyOnError) {
                     logger.warn(
                             "Success condition is not satisfied. Condition jq:'{}', Request body: '{}'",
                             successCondition.getJqFilter(),
-                            requestBody.toString());
+                            toJsonString());
                 }
                 throw JAXRSWebApplicationExceptionWrapper.wrap(response);
             }
@@ -129,13 +358,55 @@ public class JAXRSJsonNodeSingleRequester extends JAXRSSingleRequester {
         return response;
     }
 
+    // NOTE: JAXRSSingleRequester#toRetry checks the response only when the exception is wrapped,
+    //       and the exceptions thrown by 'checkResponse' and the scheduler are not. The I/O errors,
+    //       including the timeouts, are retried as well.
+    @Override
+    protected boolean isExceptionToRetry(Exception exception) {
+        for (Throwable t = exception; t != null; t = t.getCause()) {
+            if (t instanceof WebApplicationException
+                    && ((WebApplicationException) t).getResponse() != null) {
+                return isResponseStatusToRetry(((WebApplicationException) t).getResponse());
+            }
+            if (t instanceof ProcessingException
+                    && (t.getCause() instanceof IOException
+                            || t.getCause() instanceof TimeoutException)) {
+                listener.onRetry();
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     protected boolean isResponseStatusToRetry(Response response) {
         try {
-            return retryableCondition.isSatisfied(response);
+            if (isSplitConditionSatisfied(response)) {
+                return false;
+            }
+            boolean retryable = retryableCondition.isSatisfied(response);
+            if (retryable) {
+                listener.onRetry();
+            }
+            return retryable;
         } catch (InvalidJQFilterException | IllegalJQProcessingException | IOException e) {
             // TODO: Use a suitable exception class.
             throw new DataException(e);
         }
     }
+
+    private String toJsonString() {
+        if (!isCompressed) {
+            return new String(requestBody, StandardCharsets.UTF_8);
+        }
+        if (jsonRequestBody != null) {
+            return jsonRequestBody.toString();
+        }
+        return new String(serializedRequestBody, StandardCharsets.UTF_8);
+    }
+
+    private boolean isSplitConditionSatisfied(Response response)
+            throws InvalidJQFilterException, IOException, IllegalJQProcessingException {
+        return splitCondition.isPresent() && splitCondition.get().isSatisfied(response);
+    }
 }
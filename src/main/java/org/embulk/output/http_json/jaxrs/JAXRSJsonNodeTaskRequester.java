@@ -0,0 +1,171 @@
+package org.embulk.output.http_json.jaxrs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import org.embulk.config.ConfigException;
+import org.embulk.output.http_json.HttpJsonOutputPlugin.PluginTask;
+import org.embulk.output.http_json.jackson.JacksonResponseCollector;
+import org.embulk.output.http_json.jq.InvalidJQFilterException;
+import org.embulk.output.http_json.util.TokenBucket;
+import org.embulk.output.http_json.util.TransformerWorkerPool;
+
+// NOTE: Built once per task and used by the requests of the task from any thread.
+public class JAXRSJsonNodeTaskRequester implements AutoCloseable {
+
+    private final PluginTask task;
+    private final int taskIndex;
+    private final JAXRSResponseJqCondition successCondition;
+    private final JAXRSResponseJqCondition retryableCondition;
+    private final Optional<JAXRSResponseJqCondition> splitCondition;
+    private final JAXRSRetryScheduler retryScheduler;
+    private final JAXRSPooledClient pooledClient;
+    private final boolean readsResponseBody;
+    private final JAXRSRequestListener listener;
+    private final boolean async;
+    private final Optional<TokenBucket> requestRateLimiter;
+    private final Optional<TokenBucket> byteRateLimiter;
+
+    private JAXRSJsonNodeTaskRequester(
+            PluginTask task, int taskIndex, JAXRSRequestListener listener) {
+        this.task = task;
+        this.taskIndex = taskIndex;
+        this.listener = listener;
+        this.async = task.getRequestEngine().equals("async");
+        try {
+            this.successCondition = new JAXRSResponseJqCondition(task.getSuccessConditionJq());
+            this.retryableCondition = new JAXRSResponseJqCondition(task.getRetryableConditionJq());
+            this.splitCondition =
+                    task.getSplitConditionJq().isPresent()
+                            ? Optional.of(
+                                    new JAXRSResponseJqCondition(task.getSplitConditionJq().get()))
+                            : Optional.empty();
+            this.retryScheduler = JAXRSRetryScheduler.of(task);
+        } catch (InvalidJQFilterException e) {
+            throw new ConfigException(e);
+        }
+        this.pooledClient = JAXRSPooledClient.of(task);
+        this.readsResponseBody =
+                successCondition.readsResponseBody()
+                        || retryableCondition.readsResponseBody()
+                        || splitCondition
+                                .map(JAXRSResponseJqCondition::readsResponseBody)
+                                .orElse(false)
+                        || retainsResponseBody(task);
+        // NOTE: The limits are shared by the tasks sending the requests to the same origin.
+        this.requestRateLimiter =
+                task.getRequestsPerSecond()
+                        .map(
+                                r ->
+                                        TokenBucket.shared(
+                                                "requests_per_second:" + buildOrigin(task), r));
+        this.byteRateLimiter =
+                task.getBytesPerSecond()
+                        .map(r -> TokenBucket.shared("bytes_per_second:" + buildOrigin(task), r));
+    }
+
+    private static String buildOrigin(PluginTask task) {
+        return task.getScheme()
+                + "://"
+                + task.getHost()
+                + task.getPort().map(port -> ":" + port).orElse("");
+    }
+
+    // NOTE: The response bodies of 2xx responses are put into the task report only by these
+    //       retentions. The bodies of the other responses are always read for the error messages.
+    private static boolean retainsResponseBody(PluginTask task) {
+        switch (JacksonResponseCollector.Retention.of(task.getResponseRetention())) {
+            case ALL:
+            case FIRST:
+            case SAMPLED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public static JAXRSJsonNodeTaskRequester of(
+            PluginTask task, int taskIndex, JAXRSRequestListener listener) {
+        return new JAXRSJsonNodeTaskRequester(task, taskIndex, listener);
+    }
+
+    // NOTE: 'recordOffset' is the offset in the task of the first record in the request body,
+    //       which identifies the request in the idempotency key.
+    public ObjectNode requestWithRetry(JsonNode requestBody, long recordOffset) {
+        return requestWithRetry(builder(recordOffset).requestBody(requestBody));
+    }
+
+    public ObjectNode requestWithRetry(byte[] serializedRequestBody, long recordOffset) {
+        return requestWithRetry(builder(recordOffset).serializedRequestBody(serializedRequestBody));
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    // NOTE: With the asynchronous engine, these return once the request is started. With the
+    //       blocking engine, they return a completed future.
+    public CompletableFuture<ObjectNode> requestWithRetryAsync(
+            JsonNode requestBody, long recordOffset) {
+        return requestWithRetryAsync(builder(recordOffset).requestBody(requestBody));
+    }
+
+    public CompletableFuture<ObjectNode> requestWithRetryAsync(
+            byte[] serializedRequestBody, long recordOffset) {
+        return requestWithRetryAsync(
+                builder(recordOffset).serializedRequestBody(serializedRequestBody));
+    }
+
+    // NOTE: With the asynchronous engine, the request is started by the thread that completes
+    //       'requestBody'.
+    public CompletableFuture<ObjectNode> requestWithRetryAsync(
+            CompletableFuture<JsonNode> requestBody, long recordOffset) {
+        if (async) {
+            return requestBody.thenCompose(body -> requestWithRetryAsync(body, recordOffset));
+        }
+        return requestWithRetryAsync(TransformerWorkerPool.join(requestBody), recordOffset);
+    }
+
+    private CompletableFuture<ObjectNode> requestWithRetryAsync(
+            JAXRSJsonNodeSingleRequester.Builder requesterBuilder) {
+        if (async) {
+            return retryScheduler.requestWithRetryAsync(
+                    pooledClient.getClient(),
+                    JAXRSObjectNodeResponseEntityReader.newInstance(),
+                    requesterBuilder.build());
+        }
+        CompletableFuture<ObjectNode> future = new CompletableFuture<>();
+        try {
+            future.complete(requestWithRetry(requesterBuilder));
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private JAXRSJsonNodeSingleRequester.Builder builder(long recordOffset) {
+        return JAXRSJsonNodeSingleRequester.builder()
+                .task(task)
+                .requestId(taskIndex + "-" + recordOffset)
+                .successCondition(successCondition)
+                .retryableCondition(retryableCondition)
+                .splitCondition(splitCondition)
+                .readsResponseBody(readsResponseBody)
+                .listener(listener)
+                .requestRateLimiter(requestRateLimiter)
+                .byteRateLimiter(byteRateLimiter);
+    }
+
+    private ObjectNode requestWithRetry(JAXRSJsonNodeSingleRequester.Builder requesterBuilder) {
+        return retryScheduler.requestWithRetry(
+                pooledClient.getClient(),
+                JAXRSObjectNodeResponseEntityReader.newInstance(),
+                requesterBuilder.build());
+    }
+
+    @Override
+    public void close() {
+        pooledClient.close();
+    }
+}
@@ -0,0 +1,172 @@
+package org.embulk.output.http_json.jaxrs;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import jersey.repackaged.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.http2.client.HTTP2Client;
+import org.eclipse.jetty.http2.client.http.HttpClientTransportOverHTTP2;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.embulk.output.http_json.HttpJsonOutputPlugin.PluginTask;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+
+// NOTE: A JAX-RS client on a pooled Jetty HTTP client, shared by the requests of a task. With
+//       'share_connection_pool', it is shared by the tasks with the same origin and settings, and
+//       closed after 'idle_connection_timeout_millis' without users.
+public class JAXRSPooledClient implements AutoCloseable {
+
+    private static final Map<String, JAXRSPooledClient> sharedClients = new HashMap<>();
+
+    private static ScheduledExecutorService timer;
+
+    private final Optional<String> sharedKey;
+    private final long idleTimeoutMillis;
+    private final Client client;
+
+    // NOTE: Guarded by 'sharedClients'.
+    private int references = 0;
+    private Optional<ScheduledFuture<?>> scheduledClose = Optional.empty();
+
+    private JAXRSPooledClient(PluginTask task, Optional<String> sharedKey) {
+        this.sharedKey = sharedKey;
+        this.idleTimeoutMillis = task.getIdleConnectionTimeoutMillis();
+        this.client = buildClient(task, buildHttpClient(task));
+    }
+
+    public static JAXRSPooledClient of(PluginTask task) {
+        if (!task.getShareConnectionPool()) {
+            return new JAXRSPooledClient(task, Optional.empty());
+        }
+        synchronized (sharedClients) {
+            JAXRSPooledClient pooledClient =
+                    sharedClients.computeIfAbsent(
+                            buildSharedKey(task), k -> new JAXRSPooledClient(task, Optional.of(k)));
+            pooledClient.references++;
+            pooledClient.scheduledClose.ifPresent(future -> future.cancel(false));
+            pooledClient.scheduledClose = Optional.empty();
+            return pooledClient;
+        }
+    }
+
+    private static String buildSharedKey(PluginTask task) {
+        return task.getScheme().toString()
+                + "://"
+                + task.getHost()
+                + task.getPort().map(port -> ":" + port).orElse("")
+                + " "
+                + String.join(
+                        ",",
+                        "HTTP/" + task.getHttpVersion(),
+                        String.valueOf(task.getMaxConnections()),
+                        String.valueOf(task.getIdleConnectionTimeoutMillis()),
+                        String.valueOf(task.getConnectTimeoutMillis()),
+                        String.valueOf(task.getReadTimeoutMillis()));
+    }
+
+    // NOTE: HTTP/2 is h2c with prior knowledge over http and negotiated by ALPN over https. The
+    //       threads are daemons, so a client left open does not keep the JVM alive.
+    private static HttpClient buildHttpClient(PluginTask task) {
+        final SslContextFactory.Client sslContextFactory = new SslContextFactory.Client();
+        final HttpClient httpClient =
+                task.getHttpVersion().equals("2")
+                        ? new HttpClient(
+                                new HttpClientTransportOverHTTP2(new HTTP2Client()),
+                                sslContextFactory)
+                        : new HttpClient(sslContextFactory);
+        final QueuedThreadPool threadPool = new QueuedThreadPool();
+        threadPool.setName(JAXRSPooledClient.class.getSimpleName());
+        threadPool.setDaemon(true);
+        httpClient.setExecutor(threadPool);
+        httpClient.setScheduler(
+                new ScheduledExecutorScheduler(
+                        JAXRSPooledClient.class.getSimpleName() + "-scheduler", true));
+        httpClient.setMaxConnectionsPerDestination(task.getMaxConnections());
+        // NOTE: The queue is allocated at this size, which covers the tasks that Embulk runs at
+        //       once.
+        httpClient.setMaxRequestsQueuedPerDestination(
+                Math.max(
+                        1024,
+                        task.getMaxConcurrentRequests()
+                                * Runtime.getRuntime().availableProcessors()
+                                * 2));
+        // NOTE: The Jetty client fails without a connect timeout, so '0' is a very long one.
+        httpClient.setConnectTimeout(
+                task.getConnectTimeoutMillis() > 0
+                        ? task.getConnectTimeoutMillis()
+                        : TimeUnit.DAYS.toMillis(365));
+        httpClient.setIdleTimeout(task.getIdleConnectionTimeoutMillis());
+        try {
+            httpClient.start();
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to start the HTTP client.", e);
+        }
+        return httpClient;
+    }
+
+    private static Client buildClient(PluginTask task, HttpClient httpClient) {
+        ClientConfig config = new ClientConfig();
+        config.connectorProvider(
+                (client, configuration) ->
+                        new JAXRSJettyConnector(httpClient, task.getReadTimeoutMillis()));
+        // NOTE: These threads only hand the requests over to the connector.
+        config.property(
+                ClientProperties.ASYNC_THREADPOOL_SIZE, Runtime.getRuntime().availableProcessors());
+        return ClientBuilder.newBuilder().withConfig(config).build();
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    @Override
+    public void close() {
+        if (sharedKey.isPresent()) {
+            synchronized (sharedClients) {
+                if (--references == 0) {
+                    scheduledClose =
+                            Optional.of(
+                                    getTimer()
+                                            .schedule(
+                                                    this::closeIfUnused,
+                                                    idleTimeoutMillis,
+                                                    TimeUnit.MILLISECONDS));
+                }
+            }
+            return;
+        }
+        client.close();
+    }
+
+    private void closeIfUnused() {
+        synchronized (sharedClients) {
+            if (references > 0) {
+                return;
+            }
+            sharedClients.remove(sharedKey.get());
+        }
+        client.close();
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer =
+                    Executors.newSingleThreadScheduledExecutor(
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat(
+                                            JAXRSPooledClient.class.getSimpleName() + "-closer-%d")
+                                    .setDaemon(true)
+                                    .build());
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,60 @@
+package org.embulk.output.http_json.jaxrs;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+public enum JAXRSRequestCompression {
+    NONE(null) {
+        @Override
+        public OutputStream compress(OutputStream out, int level) {
+            return out;
+        }
+    },
+    GZIP("gzip") {
+        @Override
+        public OutputStream compress(OutputStream out, int level) throws IOException {
+            return new LeveledGZIPOutputStream(out, level);
+        }
+    },
+    DEFLATE("deflate") {
+        @Override
+        public OutputStream compress(OutputStream out, int level) {
+            return new LeveledDeflaterOutputStream(out, level);
+        }
+    };
+
+    private final String contentEncoding;
+
+    JAXRSRequestCompression(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    public static JAXRSRequestCompression of(String name) {
+        return valueOf(name.toUpperCase(Locale.ENGLISH));
+    }
+
+    public Optional<String> getContentEncoding() {
+        return Optional.ofNullable(contentEncoding);
+    }
+
+    // NOTE: Closing the returned stream finishes the compression and closes 'out'.
+    public abstract OutputStream compress(OutputStream out, int level) throws IOException;
+
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+        LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+
+    private static class LeveledDeflaterOutputStream extends DeflaterOutputStream {
+        LeveledDeflaterOutputStream(OutputStream out, int level) {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.embulk.output.http_json.jaxrs;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+// NOTE: Called from the requesting threads for every attempt, including the retried and the
+//       failed ones.
+public interface JAXRSRequestListener {
+
+    void onResponse(ObjectNode response, long elapsedMillis);
+
+    void onRetry();
+}
@@ -1,29 +1,52 @@
 package org.embulk.output.http_json.jaxrs;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.IntPredicate;
 import javax.ws.rs.core.Response;
+import net.thisptr.jackson.jq.JsonQuery;
 import org.embulk.output.http_json.jq.IllegalJQProcessingException;
 import org.embulk.output.http_json.jq.InvalidJQFilterException;
 import org.embulk.output.http_json.jq.JQ;
+import org.embulk.output.http_json.jq.JQInputFields;
+import org.embulk.output.http_json.jq.JQStatusCodePredicate;
 
 public class JAXRSResponseJqCondition {
 
+    // NOTE: The fields of the json that JAXRSResponseJson builds without the response body.
+    private static final Set<String> STATUS_FIELDS =
+            Collections.unmodifiableSet(
+                    new HashSet<>(Arrays.asList("status_code", "status_code_class")));
+
     private final String jqFilter;
     private final JQ jq;
+    private final JsonQuery query;
+    private final boolean readsResponseBody;
+    private final Optional<IntPredicate> statusCodePredicate;
 
     public JAXRSResponseJqCondition(String jqFilter) throws InvalidJQFilterException {
         this.jqFilter = jqFilter;
         this.jq = new JQ();
-        validateFilter();
-    }
-
-    private void validateFilter() throws InvalidJQFilterException {
-        jq.validateFilter(jqFilter);
+        this.query = jq.compileFilter(jqFilter);
+        this.readsResponseBody = !JQInputFields.readsOnly(jqFilter, STATUS_FIELDS);
+        this.statusCodePredicate = JQStatusCodePredicate.compile(jqFilter);
     }
 
     public boolean isSatisfied(Response response)
             throws InvalidJQFilterException, IOException, IllegalJQProcessingException {
-        return jq.jqBoolean(jqFilter, JAXRSResponseJson.convertResponseToObjectNode(response));
+        // NOTE: The filters that read only the status code are evaluated without jq.
+        if (statusCodePredicate.isPresent()) {
+            return statusCodePredicate.get().test(response.getStatus());
+        }
+        return jq.jqBoolean(query, JAXRSResponseJson.convertResponseToObjectNode(response));
+    }
+
+    public boolean readsResponseBody() {
+        return readsResponseBody;
     }
 
     public String getJqFilter() {
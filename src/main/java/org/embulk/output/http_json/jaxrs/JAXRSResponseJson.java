@@ -12,6 +12,9 @@ public class JAXRSResponseJson {
     private static final ObjectMapper mapper = new ObjectMapper();
 
     public static ObjectNode convertResponseToObjectNode(Response response) throws IOException {
+        if (response instanceof JAXRSEntityRecycleResponse) {
+            return ((JAXRSEntityRecycleResponse) response).toObjectNode();
+        }
         ObjectNode responseJson = mapper.createObjectNode();
         responseJson.put("status_code", response.getStatus());
         responseJson.put("status_code_class", (response.getStatus() / 100) * 100);
@@ -0,0 +1,344 @@
+package org.embulk.output.http_json.jaxrs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.core.Response;
+import jersey.repackaged.com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.thisptr.jackson.jq.JsonQuery;
+import org.embulk.output.http_json.HttpJsonOutputPlugin.PluginTask;
+import org.embulk.output.http_json.jq.IllegalJQProcessingException;
+import org.embulk.output.http_json.jq.InvalidJQFilterException;
+import org.embulk.output.http_json.jq.JQ;
+import org.embulk.util.retryhelper.jaxrs.JAXRSResponseReader;
+import org.embulk.util.retryhelper.jaxrs.JAXRSSingleRequester;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// NOTE: Retries like JAXRSRetryHelper, except for the interval: the exponential backoff, optionally
+//       jittered, capped by 'maximum_retry_interval_millis'. A wait asked by the response is
+//       honored beyond the cap, and the request fails if it exceeds 'maximum_retry_after_millis'.
+public class JAXRSRetryScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(JAXRSRetryScheduler.class);
+
+    // NOTE: Tried in this order. 'Retry-After' is seconds or an HTTP date. The others are seconds,
+    //       or epoch seconds when large.
+    private static final List<String> RETRY_AFTER_HEADERS =
+            Arrays.asList(
+                    "Retry-After", "RateLimit-Reset", "X-RateLimit-Reset", "X-Rate-Limit-Reset");
+    private static final long EPOCH_SECONDS_THRESHOLD = 1_000_000_000L;
+
+    private static ScheduledExecutorService timer;
+
+    private final int maximumRetries;
+    private final long initialIntervalMillis;
+    private final long maximumIntervalMillis;
+    private final boolean jitter;
+    private final boolean respectsRetryAfter;
+    private final long maximumRetryAfterMillis;
+    private final JQ jq;
+    private final Optional<JsonQuery> intervalQuery;
+
+    private JAXRSRetryScheduler(PluginTask task) throws InvalidJQFilterException {
+        this.maximumRetries = task.getMaximumRetries();
+        this.initialIntervalMillis = task.getInitialRetryIntervalMillis();
+        this.maximumIntervalMillis = task.getMaximumRetryIntervalMillis();
+        this.jitter = task.getRetryJitter();
+        this.respectsRetryAfter = task.getRespectRetryAfter();
+        this.maximumRetryAfterMillis =
+                task.getMaximumRetryAfterMillis()
+                        .orElse((long) task.getMaximumRetryIntervalMillis());
+        this.jq = new JQ();
+        this.intervalQuery =
+                task.getRetryIntervalJq().isPresent()
+                        ? Optional.of(jq.compileFilter(task.getRetryIntervalJq().get()))
+                        : Optional.empty();
+    }
+
+    public static JAXRSRetryScheduler of(PluginTask task) throws InvalidJQFilterException {
+        return new JAXRSRetryScheduler(task);
+    }
+
+    public <T> T requestWithRetry(
+            Client client, JAXRSResponseReader<T> responseReader, JAXRSSingleRequester requester) {
+        for (int retryCount = 0; ; retryCount++) {
+            try {
+                Response response = requester.requestOnce(client);
+                if (response.getStatus() / 100 != 2) {
+                    throw new WebApplicationException(response);
+                }
+                return responseReader.readResponse(response);
+            } catch (Exception e) {
+                if (retryCount >= maximumRetries || !requester.toRetry(e)) {
+                    throw toRuntimeException(e);
+                }
+                long intervalMillis = getIntervalMillis(retryCount + 1, e);
+                if (intervalMillis < 0) {
+                    throw toRuntimeException(e);
+                }
+                logRetry(retryCount + 1, intervalMillis, e);
+                sleep(intervalMillis);
+            }
+        }
+    }
+
+    // NOTE: The asynchronous version of 'requestWithRetry'. The waits are scheduled on a timer
+    //       instead of sleeping, so no thread is held while waiting.
+    public <T> CompletableFuture<T> requestWithRetryAsync(
+            Client client,
+            JAXRSResponseReader<T> responseReader,
+            JAXRSJsonNodeSingleRequester requester) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(client, responseReader, requester, 0, result);
+        return result;
+    }
+
+    private <T> void attemptAsync(
+            Client client,
+            JAXRSResponseReader<T> responseReader,
+            JAXRSJsonNodeSingleRequester requester,
+            int retryCount,
+            CompletableFuture<T> result) {
+        try {
+            long waitNanos = requester.reserveTokens();
+            Runnable attempt =
+                    () ->
+                            requester
+                                    .requestOnceAsync(client)
+                                    .whenComplete(
+                                            (response, t) ->
+                                                    onAttemptComplete(
+                                                            client,
+                                                            responseReader,
+                                                            requester,
+                                                            retryCount,
+                                                            result,
+                                                            response,
+                                                            t));
+            if (waitNanos > 0) {
+                schedule(attempt, waitNanos, result);
+            } else {
+                attempt.run();
+            }
+        } catch (RuntimeException | Error e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    private <T> void onAttemptComplete(
+            Client client,
+            JAXRSResponseReader<T> responseReader,
+            JAXRSJsonNodeSingleRequester requester,
+            int retryCount,
+            CompletableFuture<T> result,
+            Response response,
+            Throwable throwable) {
+        Throwable t = unwrap(throwable);
+        if (t == null) {
+            try {
+                if (response.getStatus() / 100 != 2) {
+                    throw new WebApplicationException(response);
+                }
+                result.complete(responseReader.readResponse(response));
+                return;
+            } catch (Exception e) {
+                t = e;
+            }
+        }
+        if (!(t instanceof Exception)) {
+            result.completeExceptionally(t);
+            return;
+        }
+        Exception e = (Exception) t;
+        try {
+            if (retryCount >= maximumRetries || !requester.toRetry(e)) {
+                result.completeExceptionally(toRuntimeException(e));
+                return;
+            }
+            long intervalMillis = getIntervalMillis(retryCount + 1, e);
+            if (intervalMillis < 0) {
+                result.completeExceptionally(toRuntimeException(e));
+                return;
+            }
+            logRetry(retryCount + 1, intervalMillis, e);
+            schedule(
+                    () -> attemptAsync(client, responseReader, requester, retryCount + 1, result),
+                    TimeUnit.MILLISECONDS.toNanos(intervalMillis),
+                    result);
+        } catch (RuntimeException | Error e2) {
+            result.completeExceptionally(e2);
+        }
+    }
+
+    private static void schedule(Runnable task, long delayNanos, CompletableFuture<?> result) {
+        getTimer()
+                .schedule(
+                        () -> {
+                            try {
+                                task.run();
+                            } catch (RuntimeException | Error e) {
+                                result.completeExceptionally(e);
+                            }
+                        },
+                        delayNanos,
+                        TimeUnit.NANOSECONDS);
+    }
+
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) {
+            timer =
+                    Executors.newSingleThreadScheduledExecutor(
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat(
+                                            JAXRSRetryScheduler.class.getSimpleName() + "-%d")
+                                    .setDaemon(true)
+                                    .build());
+        }
+        return timer;
+    }
+
+    private void logRetry(int retryCount, long intervalMillis, Exception e) {
+        String message =
+                String.format(
+                        "Retrying %d/%d after %d milliseconds. Message: %s",
+                        retryCount, maximumRetries, intervalMillis, e.getMessage());
+        if (retryCount % 3 == 0) {
+            logger.warn(message, e);
+        } else {
+            logger.warn(message);
+        }
+    }
+
+    // NOTE: Returns -1 if the response asks for a wait longer than 'maximum_retry_after_millis'.
+    long getIntervalMillis(int retryCount, Exception e) {
+        long backoffMillis = getBackoffMillis(retryCount);
+        long requestedMillis = findResponse(e).flatMap(this::getRequestedIntervalMillis).orElse(0L);
+        if (requestedMillis > maximumRetryAfterMillis) {
+            logger.warn(
+                    "The response asks for a retry after {} milliseconds, which exceeds 'maximum_retry_after_millis' {}.",
+                    requestedMillis,
+                    maximumRetryAfterMillis);
+            return -1;
+        }
+        return Math.max(backoffMillis, requestedMillis);
+    }
+
+    // NOTE: The "equal jitter", which keeps at least half of the backoff so that the retries do
+    //       not get faster than the backoff on average.
+    long getBackoffMillis(int retryCount) {
+        long backoffMillis = initialIntervalMillis;
+        for (int i = 1; i < retryCount && backoffMillis < maximumIntervalMillis; i++) {
+            backoffMillis *= 2;
+        }
+        backoffMillis = Math.min(maximumIntervalMillis, backoffMillis);
+        if (!jitter || backoffMillis < 2) {
+            return backoffMillis;
+        }
+        long half = backoffMillis / 2;
+        return half + ThreadLocalRandom.current().nextLong(backoffMillis - half + 1);
+    }
+
+    private Optional<Long> getRequestedIntervalMillis(Response response) {
+        if (intervalQuery.isPresent()) {
+            Optional<Long> fromQuery = getIntervalMillisFromQuery(response);
+            if (fromQuery.isPresent()) {
+                return fromQuery;
+            }
+        }
+        if (!respectsRetryAfter) {
+            return Optional.empty();
+        }
+        for (String header : RETRY_AFTER_HEADERS) {
+            String value = response.getHeaderString(header);
+            if (value != null) {
+                Optional<Long> fromHeader = parseRetryAfter(value.trim(), Instant.now());
+                if (fromHeader.isPresent()) {
+                    return fromHeader;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private Optional<Long> getIntervalMillisFromQuery(Response response) {
+        try {
+            JsonNode interval =
+                    jq.jqSingle(
+                            intervalQuery.get(),
+                            JAXRSResponseJson.convertResponseToObjectNode(response));
+            if (interval != null && interval.isNumber()) {
+                return Optional.of(Math.max(0L, interval.asLong()));
+            }
+        } catch (IOException | IllegalJQProcessingException e) {
+            logger.warn("Failed to apply 'retry_interval_jq'. The backoff is used instead.", e);
+        }
+        return Optional.empty();
+    }
+
+    static Optional<Long> parseRetryAfter(String value, Instant now) {
+        try {
+            long seconds = Long.parseLong(value);
+            if (seconds >= EPOCH_SECONDS_THRESHOLD) {
+                return Optional.of(Math.max(0L, seconds * 1000 - now.toEpochMilli()));
+            }
+            return Optional.of(Math.max(0L, seconds * 1000));
+        } catch (NumberFormatException e) {
+            // NOTE: Not a number, so try an HTTP date.
+        }
+        try {
+            Instant until =
+                    ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Optional.of(Math.max(0L, until.toEpochMilli() - now.toEpochMilli()));
+        } catch (DateTimeParseException e) {
+            return Optional.empty();
+        }
+    }
+
+    // NOTE: The requester may wrap the exception thrown for the response.
+    private static Optional<Response> findResponse(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof WebApplicationException) {
+                return Optional.ofNullable(((WebApplicationException) t).getResponse());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null) {
+            return t.getCause();
+        }
+        return t;
+    }
+
+    private static RuntimeException toRuntimeException(Exception e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return new RuntimeException(e);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package org.embulk.output.http_json.jaxrs;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+// NOTE: This exception is thrown when 'split_condition_jq' is satisfied by the response. It is
+//       not retried, and the request is split into smaller requests by the caller instead.
+public class JAXRSSplitRequestException extends WebApplicationException {
+
+    private final ObjectNode responseJson;
+
+    public JAXRSSplitRequestException(ObjectNode responseJson, Response response) {
+        super("Split condition is satisfied. Response: " + responseJson, response);
+        this.responseJson = responseJson;
+    }
+
+    public ObjectNode getResponseJson() {
+        return responseJson;
+    }
+}
@@ -3,7 +3,11 @@ package org.embulk.output.http_json.jq;
 import com.fasterxml.jackson.databind.JsonNode;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import net.thisptr.jackson.jq.BuiltinFunctionLoader;
 import net.thisptr.jackson.jq.JsonQuery;
 import net.thisptr.jackson.jq.Scope;
@@ -15,6 +19,23 @@ import net.thisptr.jackson.jq.module.loaders.BuiltinModuleLoader;
 public class JQ {
 
     private static final Version defaultVersion = Versions.JQ_1_6;
+    private static final int COMPILED_QUERY_CACHE_SIZE = 256;
+    // NOTE: The compiled queries are shared by all JQ instances. They hold no state, so they are
+    //       thread-safe.
+    private static final Map<CompiledQueryKey, JsonQuery> compiledQueryCache =
+            Collections.synchronizedMap(
+                    new LinkedHashMap<CompiledQueryKey, JsonQuery>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(
+                                Map.Entry<CompiledQueryKey, JsonQuery> eldest) {
+                            return size() > COMPILED_QUERY_CACHE_SIZE;
+                        }
+                    });
+
+    // NOTE: Loading the builtin functions is expensive, so the root scopes are loaded once per JVM.
+    //       Every evaluation runs in its own child scope, so they are never modified.
+    private static final Map<Version, Scope> rootScopes = new ConcurrentHashMap<>();
+
     private final Scope scope;
     private final Version version;
 
@@ -25,7 +46,19 @@ public class JQ {
     }
 
     public JQ() {
-        this(Scope.newEmptyScope(), defaultVersion);
+        this(defaultVersion);
+    }
+
+    private JQ(Version version) {
+        this.scope = rootScopes.computeIfAbsent(version, JQ::newRootScope);
+        this.version = version;
+    }
+
+    private static Scope newRootScope(Version version) {
+        final Scope rootScope = Scope.newEmptyScope();
+        BuiltinFunctionLoader.getInstance().loadFunctions(version, rootScope);
+        rootScope.setModuleLoader(BuiltinModuleLoader.getInstance());
+        return rootScope;
     }
 
     protected void initializeScope(Version version, Scope scope) {
@@ -34,30 +67,68 @@ public class JQ {
     }
 
     public void validateFilter(String filter) throws InvalidJQFilterException {
+        compileFilter(filter);
+    }
+
+    public JsonQuery compileFilter(String filter) throws InvalidJQFilterException {
         try {
-            compile(filter);
+            return compile(filter);
         } catch (JsonQueryException e) {
             throw new InvalidJQFilterException(String.format("Invalid jq filter: %s", filter), e);
         }
     }
 
     private JsonQuery compile(String filter) throws JsonQueryException {
-        return JsonQuery.compile(filter, version);
+        final CompiledQueryKey key = new CompiledQueryKey(filter, version);
+        final JsonQuery cached = compiledQueryCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final JsonQuery compiled = JsonQuery.compile(filter, version);
+        compiledQueryCache.put(key, compiled);
+        return compiled;
     }
 
     public List<JsonNode> jq(String filter, JsonNode input) throws IllegalJQProcessingException {
-        final List<JsonNode> resultBuilder = new ArrayList<>();
+        final JsonQuery query;
         try {
-            compile(filter).apply(scope, input, resultBuilder::add);
+            query = compile(filter);
         } catch (JsonQueryException e) {
             throw new IllegalJQProcessingException(
                     String.format("Cannot process by the jq filter: %s", filter), e);
         }
+        return jq(query, input);
+    }
+
+    public List<JsonNode> jq(JsonQuery query, JsonNode input) throws IllegalJQProcessingException {
+        final List<JsonNode> resultBuilder = new ArrayList<>();
+        try {
+            query.apply(Scope.newChildScope(scope), input, resultBuilder::add);
+        } catch (JsonQueryException e) {
+            throw new IllegalJQProcessingException(
+                    String.format("Cannot process by the jq filter: %s", query), e);
+        }
         return Collections.unmodifiableList(resultBuilder);
     }
 
     public JsonNode jqSingle(String filter, JsonNode input) throws IllegalJQProcessingException {
-        final List<JsonNode> result = jq(filter, input);
+        return requireSingle(filter, jq(filter, input));
+    }
+
+    public JsonNode jqSingle(JsonQuery query, JsonNode input) throws IllegalJQProcessingException {
+        return requireSingle(query, jq(query, input));
+    }
+
+    public boolean jqBoolean(String filter, JsonNode input) throws IllegalJQProcessingException {
+        return requireBoolean(filter, jqSingle(filter, input));
+    }
+
+    public boolean jqBoolean(JsonQuery query, JsonNode input) throws IllegalJQProcessingException {
+        return requireBoolean(query, jqSingle(query, input));
+    }
+
+    private JsonNode requireSingle(Object filter, List<JsonNode> result)
+            throws IllegalJQProcessingException {
         if (result.size() != 1) {
             throw new IllegalJQProcessingException(
                     String.format(
@@ -67,8 +138,8 @@ public class JQ {
         return result.get(0);
     }
 
-    public boolean jqBoolean(String filter, JsonNode input) throws IllegalJQProcessingException {
-        final JsonNode maybeBoolean = jqSingle(filter, input);
+    private boolean requireBoolean(Object filter, JsonNode maybeBoolean)
+            throws IllegalJQProcessingException {
         if (!maybeBoolean.isBoolean()) {
             throw new IllegalJQProcessingException(
                     String.format(
@@ -77,4 +148,31 @@ public class JQ {
         }
         return maybeBoolean.asBoolean();
     }
+
+    private static class CompiledQueryKey {
+        private final String filter;
+        private final Version version;
+
+        CompiledQueryKey(String filter, Version version) {
+            this.filter = filter;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CompiledQueryKey)) {
+                return false;
+            }
+            CompiledQueryKey that = (CompiledQueryKey) o;
+            return filter.equals(that.filter) && version.equals(that.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filter, version);
+        }
+    }
 }
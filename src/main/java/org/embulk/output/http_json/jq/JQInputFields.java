@@ -0,0 +1,59 @@
+package org.embulk.output.http_json.jq;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+// NOTE: Finds the fields of the input that a jq filter can read. It returns empty whenever the
+//       filter can read the input otherwise, e.g. by '.', '..', '.[]' or a function call. A nested
+//       access like '.foo | .bar' counts as reading both 'foo' and 'bar'.
+public class JQInputFields {
+
+    private static final Set<String> KEYWORDS =
+            Collections.unmodifiableSet(
+                    new HashSet<>(
+                            Arrays.asList(
+                                    "and", "or", "not", "if", "then", "elif", "else", "end", "true",
+                                    "false", "null", "as")));
+
+    private JQInputFields() {}
+
+    public static Optional<Set<String>> of(String filter) {
+        final Optional<List<JQToken>> tokens = JQTokenizer.tokenize(filter);
+        if (!tokens.isPresent()) {
+            return Optional.empty();
+        }
+        final Set<String> fields = new HashSet<>();
+        for (JQToken token : tokens.get()) {
+            switch (token.getType()) {
+                case FIELD:
+                    fields.add(token.getText());
+                    break;
+                case IDENTIFIER:
+                    if (!KEYWORDS.contains(token.getText())) {
+                        return Optional.empty();
+                    }
+                    break;
+                case OPERATOR:
+                    if (token.getText().equals("{")) {
+                        return Optional.empty();
+                    }
+                    break;
+                case DOT:
+                case RECURSE:
+                case FORMAT:
+                    return Optional.empty();
+                default:
+                    break;
+            }
+        }
+        return Optional.of(Collections.unmodifiableSet(fields));
+    }
+
+    public static boolean readsOnly(String filter, Set<String> fieldNames) {
+        return of(filter).map(fieldNames::containsAll).orElse(false);
+    }
+}
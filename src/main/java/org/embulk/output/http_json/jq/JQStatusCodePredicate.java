@@ -0,0 +1,212 @@
+package org.embulk.output.http_json.jq;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+// NOTE: Compiles a filter that reads only '.status_code' and '.status_code_class' into a predicate
+//       of the status code, without json or jackson-jq. Any filter outside the subset below
+//       compiles to empty and is evaluated by jq.
+//
+//         filter     := or ( '|' 'not' )*
+//         or         := and ( 'or' and )*
+//         and        := comparison ( 'and' comparison )*
+//         comparison := term ( ( '==' | '!=' | '<' | '<=' | '>' | '>=' ) term )?
+//         term       := '.status_code' | '.status_code_class' | number | 'true' | 'false'
+//                     | '(' filter ')'
+//
+//       The filter must return a boolean. Numbers are compared only with numbers, and booleans
+//       only by '==' and '!='.
+public class JQStatusCodePredicate {
+
+    private final List<JQToken> tokens;
+    private int pos = 0;
+
+    private JQStatusCodePredicate(List<JQToken> tokens) {
+        this.tokens = tokens;
+    }
+
+    public static Optional<IntPredicate> compile(String filter) {
+        final Optional<List<JQToken>> tokens = JQTokenizer.tokenize(filter);
+        if (!tokens.isPresent()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new JQStatusCodePredicate(tokens.get()).compile());
+        } catch (UnsupportedFilterException e) {
+            return Optional.empty();
+        }
+    }
+
+    private IntPredicate compile() throws UnsupportedFilterException {
+        final Operand operand = parseFilter();
+        if (pos != tokens.size()) {
+            throw new UnsupportedFilterException();
+        }
+        return operand.asPredicate();
+    }
+
+    private Operand parseFilter() throws UnsupportedFilterException {
+        Operand operand = parseOr();
+        while (accept(JQToken.Type.OPERATOR, "|")) {
+            expect(JQToken.Type.IDENTIFIER, "not");
+            final IntPredicate p = operand.toTruthiness();
+            operand = Operand.ofPredicate(p.negate());
+        }
+        return operand;
+    }
+
+    private Operand parseOr() throws UnsupportedFilterException {
+        Operand operand = parseAnd();
+        while (accept(JQToken.Type.IDENTIFIER, "or")) {
+            final IntPredicate left = operand.toTruthiness();
+            final IntPredicate right = parseAnd().toTruthiness();
+            operand = Operand.ofPredicate(left.or(right));
+        }
+        return operand;
+    }
+
+    private Operand parseAnd() throws UnsupportedFilterException {
+        Operand operand = parseComparison();
+        while (accept(JQToken.Type.IDENTIFIER, "and")) {
+            final IntPredicate left = operand.toTruthiness();
+            final IntPredicate right = parseComparison().toTruthiness();
+            operand = Operand.ofPredicate(left.and(right));
+        }
+        return operand;
+    }
+
+    private Operand parseComparison() throws UnsupportedFilterException {
+        final Operand left = parseTerm();
+        if (pos >= tokens.size() || tokens.get(pos).getType() != JQToken.Type.OPERATOR) {
+            return left;
+        }
+        final String operator = tokens.get(pos).getText();
+        switch (operator) {
+            case "==":
+            case "!=":
+            case "<":
+            case "<=":
+            case ">":
+            case ">=":
+                pos++;
+                break;
+            default:
+                return left;
+        }
+        final Operand right = parseTerm();
+        if (left.number != null && right.number != null) {
+            return Operand.ofPredicate(compareNumbers(operator, left.number, right.number));
+        }
+        if (left.predicate != null && right.predicate != null) {
+            final IntPredicate l = left.predicate;
+            final IntPredicate r = right.predicate;
+            if (operator.equals("==")) {
+                return Operand.ofPredicate(s -> l.test(s) == r.test(s));
+            }
+            if (operator.equals("!=")) {
+                return Operand.ofPredicate(s -> l.test(s) != r.test(s));
+            }
+        }
+        throw new UnsupportedFilterException();
+    }
+
+    private static IntPredicate compareNumbers(
+            String operator, IntToDoubleFunction l, IntToDoubleFunction r) {
+        switch (operator) {
+            case "==":
+                return s -> l.applyAsDouble(s) == r.applyAsDouble(s);
+            case "!=":
+                return s -> l.applyAsDouble(s) != r.applyAsDouble(s);
+            case "<":
+                return s -> l.applyAsDouble(s) < r.applyAsDouble(s);
+            case "<=":
+                return s -> l.applyAsDouble(s) <= r.applyAsDouble(s);
+            case ">":
+                return s -> l.applyAsDouble(s) > r.applyAsDouble(s);
+            default:
+                return s -> l.applyAsDouble(s) >= r.applyAsDouble(s);
+        }
+    }
+
+    private Operand parseTerm() throws UnsupportedFilterException {
+        if (pos >= tokens.size()) {
+            throw new UnsupportedFilterException();
+        }
+        final JQToken token = tokens.get(pos++);
+        if (token.is(JQToken.Type.FIELD, "status_code")) {
+            return Operand.ofNumber(s -> (double) s);
+        }
+        if (token.is(JQToken.Type.FIELD, "status_code_class")) {
+            return Operand.ofNumber(s -> (double) ((s / 100) * 100));
+        }
+        if (token.getType() == JQToken.Type.NUMBER) {
+            final double value = Double.parseDouble(token.getText());
+            return Operand.ofNumber(s -> value);
+        }
+        if (token.is(JQToken.Type.IDENTIFIER, "true")) {
+            return Operand.ofPredicate(s -> true);
+        }
+        if (token.is(JQToken.Type.IDENTIFIER, "false")) {
+            return Operand.ofPredicate(s -> false);
+        }
+        if (token.is(JQToken.Type.OPERATOR, "(")) {
+            final Operand operand = parseFilter();
+            expect(JQToken.Type.OPERATOR, ")");
+            return operand;
+        }
+        throw new UnsupportedFilterException();
+    }
+
+    private boolean accept(JQToken.Type type, String text) {
+        if (pos < tokens.size() && tokens.get(pos).is(type, text)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(JQToken.Type type, String text) throws UnsupportedFilterException {
+        if (!accept(type, text)) {
+            throw new UnsupportedFilterException();
+        }
+    }
+
+    // NOTE: Either 'predicate' for a boolean or 'number' for a number is set.
+    private static class Operand {
+        private final IntPredicate predicate;
+        private final IntToDoubleFunction number;
+
+        private Operand(IntPredicate predicate, IntToDoubleFunction number) {
+            this.predicate = predicate;
+            this.number = number;
+        }
+
+        static Operand ofPredicate(IntPredicate predicate) {
+            return new Operand(predicate, null);
+        }
+
+        static Operand ofNumber(IntToDoubleFunction number) {
+            return new Operand(null, number);
+        }
+
+        // NOTE: In jq, every number is truthy.
+        IntPredicate toTruthiness() {
+            return predicate != null ? predicate : s -> true;
+        }
+
+        IntPredicate asPredicate() throws UnsupportedFilterException {
+            if (predicate == null) {
+                throw new UnsupportedFilterException();
+            }
+            return predicate;
+        }
+    }
+
+    private static class UnsupportedFilterException extends Exception {
+        UnsupportedFilterException() {
+            super(null, null, false, false);
+        }
+    }
+}
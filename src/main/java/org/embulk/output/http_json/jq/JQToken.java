@@ -0,0 +1,43 @@
+package org.embulk.output.http_json.jq;
+
+public class JQToken {
+
+    public enum Type {
+        // NOTE: '.foo', '."foo"' and '.["foo"]'. The text is the field name.
+        FIELD,
+        // NOTE: '.' that is not followed by a field name.
+        DOT,
+        RECURSE,
+        VARIABLE,
+        FORMAT,
+        NUMBER,
+        STRING,
+        IDENTIFIER,
+        OPERATOR
+    }
+
+    private final Type type;
+    private final String text;
+
+    JQToken(Type type, String text) {
+        this.type = type;
+        this.text = text;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean is(Type type, String text) {
+        return this.type == type && this.text.equals(text);
+    }
+
+    @Override
+    public String toString() {
+        return type + "(" + text + ")";
+    }
+}
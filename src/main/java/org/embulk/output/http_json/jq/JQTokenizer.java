@@ -0,0 +1,250 @@
+package org.embulk.output.http_json.jq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+// NOTE: Splits a jq filter into tokens for the analysis. It does not validate the filter, and
+//       returns empty for the syntax it does not know, such as string interpolations.
+public class JQTokenizer {
+
+    // NOTE: Longer operators must come first.
+    private static final List<String> OPERATORS =
+            Arrays.asList(
+                    "?//", "//=", "|=", "+=", "-=", "*=", "/=", "%=", "==", "!=", "<=", ">=", "//",
+                    "|", ",", "(", ")", "[", "]", "{", "}", ":", ";", "+", "-", "*", "/", "%", "<",
+                    ">", "=", "?");
+
+    private final String filter;
+    private int pos = 0;
+
+    private JQTokenizer(String filter) {
+        this.filter = filter;
+    }
+
+    public static Optional<List<JQToken>> tokenize(String filter) {
+        return new JQTokenizer(filter).tokenize();
+    }
+
+    private Optional<List<JQToken>> tokenize() {
+        final List<JQToken> tokens = new ArrayList<>();
+        while (true) {
+            skipWhitespacesAndComments();
+            if (pos >= filter.length()) {
+                return Optional.of(tokens);
+            }
+            final JQToken token = nextToken();
+            if (token == null) {
+                return Optional.empty();
+            }
+            tokens.add(token);
+        }
+    }
+
+    private JQToken nextToken() {
+        final char c = filter.charAt(pos);
+        if (c == '.') {
+            return nextDotToken();
+        }
+        if (c == '$') {
+            pos++;
+            final String name = readIdentifier();
+            return name == null ? null : new JQToken(JQToken.Type.VARIABLE, name);
+        }
+        if (c == '@') {
+            pos++;
+            final String name = readIdentifier();
+            return name == null ? null : new JQToken(JQToken.Type.FORMAT, name);
+        }
+        if (c == '"') {
+            final String s = readString();
+            return s == null ? null : new JQToken(JQToken.Type.STRING, s);
+        }
+        if (isDigit(c)) {
+            return new JQToken(JQToken.Type.NUMBER, readNumber());
+        }
+        if (isIdentifierStart(c)) {
+            final String name = readIdentifier();
+            if (filter.startsWith("::", pos)) {
+                return null;
+            }
+            return new JQToken(JQToken.Type.IDENTIFIER, name);
+        }
+        for (String operator : OPERATORS) {
+            if (filter.startsWith(operator, pos)) {
+                pos += operator.length();
+                return new JQToken(JQToken.Type.OPERATOR, operator);
+            }
+        }
+        return null;
+    }
+
+    private JQToken nextDotToken() {
+        pos++;
+        if (pos < filter.length() && filter.charAt(pos) == '.') {
+            pos++;
+            return new JQToken(JQToken.Type.RECURSE, "..");
+        }
+        if (pos < filter.length() && isIdentifierStart(filter.charAt(pos))) {
+            return new JQToken(JQToken.Type.FIELD, readIdentifier());
+        }
+        if (pos < filter.length() && filter.charAt(pos) == '"') {
+            final String name = readString();
+            return name == null ? null : new JQToken(JQToken.Type.FIELD, name);
+        }
+        final int dotEnd = pos;
+        final String bracketField = readBracketField();
+        if (bracketField != null) {
+            return new JQToken(JQToken.Type.FIELD, bracketField);
+        }
+        pos = dotEnd;
+        return new JQToken(JQToken.Type.DOT, ".");
+    }
+
+    // NOTE: Reads '["foo"]' after '.'. The caller rewinds the position when this returns null.
+    private String readBracketField() {
+        skipWhitespacesAndComments();
+        if (pos >= filter.length() || filter.charAt(pos) != '[') {
+            return null;
+        }
+        pos++;
+        skipWhitespacesAndComments();
+        if (pos >= filter.length() || filter.charAt(pos) != '"') {
+            return null;
+        }
+        final String name = readString();
+        if (name == null) {
+            return null;
+        }
+        skipWhitespacesAndComments();
+        if (pos >= filter.length() || filter.charAt(pos) != ']') {
+            return null;
+        }
+        pos++;
+        return name;
+    }
+
+    private String readString() {
+        final StringBuilder sb = new StringBuilder();
+        pos++;
+        while (pos < filter.length()) {
+            final char c = filter.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= filter.length()) {
+                return null;
+            }
+            final char e = filter.charAt(pos++);
+            switch (e) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(e);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > filter.length()) {
+                        return null;
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(filter.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        return null;
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    // NOTE: Including string interpolations '\(...)'.
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    private String readNumber() {
+        final int start = pos;
+        while (pos < filter.length() && isDigit(filter.charAt(pos))) {
+            pos++;
+        }
+        if (pos + 1 < filter.length()
+                && filter.charAt(pos) == '.'
+                && isDigit(filter.charAt(pos + 1))) {
+            pos++;
+            while (pos < filter.length() && isDigit(filter.charAt(pos))) {
+                pos++;
+            }
+        }
+        if (pos < filter.length() && (filter.charAt(pos) == 'e' || filter.charAt(pos) == 'E')) {
+            int exponent = pos + 1;
+            if (exponent < filter.length()
+                    && (filter.charAt(exponent) == '+' || filter.charAt(exponent) == '-')) {
+                exponent++;
+            }
+            if (exponent < filter.length() && isDigit(filter.charAt(exponent))) {
+                pos = exponent;
+                while (pos < filter.length() && isDigit(filter.charAt(pos))) {
+                    pos++;
+                }
+            }
+        }
+        return filter.substring(start, pos);
+    }
+
+    private String readIdentifier() {
+        if (pos >= filter.length() || !isIdentifierStart(filter.charAt(pos))) {
+            return null;
+        }
+        final int start = pos;
+        while (pos < filter.length() && isIdentifierPart(filter.charAt(pos))) {
+            pos++;
+        }
+        return filter.substring(start, pos);
+    }
+
+    private void skipWhitespacesAndComments() {
+        while (pos < filter.length()) {
+            final char c = filter.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (c == '#') {
+                while (pos < filter.length() && filter.charAt(pos) != '\n') {
+                    pos++;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || isDigit(c);
+    }
+}
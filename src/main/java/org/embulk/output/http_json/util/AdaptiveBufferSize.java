@@ -0,0 +1,47 @@
+package org.embulk.output.http_json.util;
+
+// NOTE: Changes the number of records per request in AIMD style. A response within
+//       'targetResponseTimeMillis' adds 'increment', and a slower or retried one halves the size,
+//       between 'minSize' and 'maxSize'.
+public class AdaptiveBufferSize {
+
+    private final int minSize;
+    private final int maxSize;
+    private final int increment;
+    private final long targetResponseTimeMillis;
+
+    private int size;
+
+    public AdaptiveBufferSize(
+            int initialSize, int minSize, int maxSize, long targetResponseTimeMillis) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.increment = Math.max(1, initialSize / 10);
+        this.targetResponseTimeMillis = targetResponseTimeMillis;
+        this.size = initialSize;
+    }
+
+    public static AdaptiveBufferSize fixed(int size) {
+        return new AdaptiveBufferSize(size, size, size, Long.MAX_VALUE);
+    }
+
+    public synchronized int get() {
+        return size;
+    }
+
+    public synchronized void onResponse(long elapsedMillis) {
+        if (elapsedMillis > targetResponseTimeMillis) {
+            decrease();
+        } else {
+            size = Math.min(maxSize, size + increment);
+        }
+    }
+
+    public synchronized void onRetry() {
+        decrease();
+    }
+
+    private void decrease() {
+        size = Math.max(minSize, size / 2);
+    }
+}
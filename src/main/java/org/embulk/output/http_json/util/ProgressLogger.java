@@ -4,6 +4,7 @@ import java.time.Duration;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import jersey.repackaged.com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
@@ -18,6 +19,7 @@ public class ProgressLogger {
 
     private final AtomicLong globalRequestCount = new AtomicLong(0);
     private final AtomicLong globalElapsedTime = new AtomicLong(0);
+    private final AtomicInteger lastBufferSize = new AtomicInteger(0);
 
     public ProgressLogger(Duration loggingInterval) {
         service =
@@ -54,15 +56,28 @@ public class ProgressLogger {
         globalElapsedTime.addAndGet(elapsedTIme);
     }
 
+    public void setBufferSize(int bufferSize) {
+        lastBufferSize.set(bufferSize);
+    }
+
     private void outputProgress() {
         long requestCount = globalRequestCount.get();
         long elapsedTime = globalElapsedTime.get();
         if (requestCount == 0) {
             return;
         }
-        logger.info(
-                "request count: {}, response time avg: {} ms",
-                requestCount,
-                elapsedTime / requestCount);
+        int bufferSize = lastBufferSize.get();
+        if (bufferSize == 0) {
+            logger.info(
+                    "request count: {}, response time avg: {} ms",
+                    requestCount,
+                    elapsedTime / requestCount);
+        } else {
+            logger.info(
+                    "request count: {}, response time avg: {} ms, buffer size: {}",
+                    requestCount,
+                    elapsedTime / requestCount,
+                    bufferSize);
+        }
     }
 }
@@ -0,0 +1,58 @@
+package org.embulk.output.http_json.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.ToLongFunction;
+
+// NOTE: A slice is closed when it has 'maxRecords' records or its estimated size as a json array
+//       reaches 'maxBytes'. Only a slice of a single record can exceed 'maxBytes'.
+public class RecordSlicer<T> {
+
+    private final IntSupplier maxRecords;
+    private final long maxBytes;
+    private final ToLongFunction<T> sizeEstimator;
+    private final Consumer<List<T>> sliceConsumer;
+
+    private List<T> slice = new ArrayList<>();
+    private long sliceBytes = 0;
+
+    public RecordSlicer(
+            IntSupplier maxRecords,
+            long maxBytes,
+            ToLongFunction<T> sizeEstimator,
+            Consumer<List<T>> sliceConsumer) {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.sizeEstimator = sizeEstimator;
+        this.sliceConsumer = sliceConsumer;
+    }
+
+    public RecordSlicer(int maxRecords, Consumer<List<T>> sliceConsumer) {
+        this(() -> maxRecords, Long.MAX_VALUE, r -> 0L, sliceConsumer);
+    }
+
+    public void add(T record) {
+        long recordBytes = maxBytes == Long.MAX_VALUE ? 0L : sizeEstimator.applyAsLong(record);
+        if (!slice.isEmpty() && sliceBytes + 1 + recordBytes > maxBytes) {
+            flush();
+        }
+        // NOTE: '[' and ']' for the first record, and ',' for the others.
+        sliceBytes += (slice.isEmpty() ? 2 : 1) + recordBytes;
+        slice.add(record);
+        if (slice.size() >= maxRecords.getAsInt() || sliceBytes >= maxBytes) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        if (slice.isEmpty()) {
+            return;
+        }
+        List<T> completed = slice;
+        slice = new ArrayList<>();
+        sliceBytes = 0;
+        sliceConsumer.accept(completed);
+    }
+}
@@ -0,0 +1,160 @@
+package org.embulk.output.http_json.util;
+
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import jersey.repackaged.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+// NOTE: At most 'maxConcurrentRequests' requests are in flight or waiting to be consumed, and
+//       the results are consumed in the order that the requests are submitted.
+public class RequestPipeline<T, R> implements AutoCloseable {
+
+    private final Optional<ExecutorService> executor;
+    private final int maxConcurrentRequests;
+    private final Function<T, CompletableFuture<R>> requester;
+    private final BiConsumer<R, Long> resultConsumer;
+    private final AutoCloseable resource;
+    private final ArrayDeque<Future<TimedResult<R>>> futures = new ArrayDeque<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public RequestPipeline(
+            int maxConcurrentRequests,
+            Function<T, R> requester,
+            BiConsumer<R, Long> resultConsumer,
+            AutoCloseable resource) {
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(
+                        maxConcurrentRequests,
+                        new ThreadFactoryBuilder()
+                                .setNameFormat(RequestPipeline.class.getSimpleName() + "-%d")
+                                .setDaemon(true)
+                                .build());
+        this.executor = Optional.of(executor);
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.requester =
+                request -> CompletableFuture.supplyAsync(() -> requester.apply(request), executor);
+        this.resultConsumer = resultConsumer;
+        this.resource = resource;
+    }
+
+    private RequestPipeline(
+            Function<T, CompletableFuture<R>> requester,
+            int maxConcurrentRequests,
+            BiConsumer<R, Long> resultConsumer,
+            AutoCloseable resource) {
+        this.executor = Optional.empty();
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.requester = requester;
+        this.resultConsumer = resultConsumer;
+        this.resource = resource;
+    }
+
+    public static <T, R> RequestPipeline<T, R> ofAsync(
+            int maxConcurrentRequests,
+            Function<T, CompletableFuture<R>> requester,
+            BiConsumer<R, Long> resultConsumer,
+            AutoCloseable resource) {
+        return new RequestPipeline<>(requester, maxConcurrentRequests, resultConsumer, resource);
+    }
+
+    public void submit(T request) {
+        throwIfFailed();
+        while (futures.size() >= maxConcurrentRequests) {
+            consume(futures.pollFirst());
+        }
+        final long start = System.currentTimeMillis();
+        final CompletableFuture<R> future;
+        try {
+            future = requester.apply(request);
+        } catch (RuntimeException | Error e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+        futures.add(
+                future.handle(
+                        (result, t) -> {
+                            if (t != null) {
+                                final Throwable cause = unwrap(t);
+                                failure.compareAndSet(null, cause);
+                                throw new CompletionException(cause);
+                            }
+                            return new TimedResult<>(result, System.currentTimeMillis() - start);
+                        }));
+        while (!futures.isEmpty() && futures.peekFirst().isDone()) {
+            consume(futures.pollFirst());
+        }
+    }
+
+    public void finish() {
+        while (!futures.isEmpty()) {
+            consume(futures.pollFirst());
+        }
+    }
+
+    private void consume(Future<TimedResult<R>> future) {
+        final TimedResult<R> timedResult;
+        try {
+            timedResult = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        }
+        resultConsumer.accept(timedResult.result, timedResult.elapsedMillis);
+    }
+
+    @Override
+    public void close() {
+        executor.ifPresent(ExecutorService::shutdownNow);
+        try {
+            resource.close();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void throwIfFailed() {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw propagate(t);
+        }
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null) {
+            return t.getCause();
+        }
+        return t;
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new RuntimeException(t);
+    }
+
+    private static class TimedResult<R> {
+        private final R result;
+        private final long elapsedMillis;
+
+        private TimedResult(R result, long elapsedMillis) {
+            this.result = result;
+            this.elapsedMillis = elapsedMillis;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.embulk.output.http_json.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// NOTE: Keeps the items in memory up to 'thresholdBytes' and appends the rest to a temporary
+//       segment file as length-prefixed bytes, which 'stream' reads back one by one. The file is
+//       deleted on close.
+public class SpillableQueue<T> implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "embulk-output-http_json-";
+
+    private final long thresholdBytes;
+    private final Optional<String> directory;
+    private final ToLongFunction<T> sizeEstimator;
+    private final Function<T, byte[]> serializer;
+    private final Function<byte[], T> deserializer;
+    private final ArrayDeque<T> items = new ArrayDeque<>();
+
+    private long bytes = 0;
+    private Path segment;
+    private DataOutputStream segmentOutput;
+    private DataInputStream segmentInput;
+    private long segmentCount = 0;
+
+    public SpillableQueue(
+            long thresholdBytes,
+            Optional<String> directory,
+            ToLongFunction<T> sizeEstimator,
+            Function<T, byte[]> serializer,
+            Function<byte[], T> deserializer) {
+        this.thresholdBytes = thresholdBytes;
+        this.directory = directory;
+        this.sizeEstimator = sizeEstimator;
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+    }
+
+    // NOTE: A queue that never spills, for when no threshold is given.
+    public static <T> SpillableQueue<T> inMemory() {
+        return new SpillableQueue<>(
+                Long.MAX_VALUE,
+                Optional.empty(),
+                item -> 0L,
+                item -> {
+                    throw new UnsupportedOperationException();
+                },
+                bytes -> {
+                    throw new UnsupportedOperationException();
+                });
+    }
+
+    public void add(T item) {
+        if (segment == null) {
+            final long size = sizeEstimator.applyAsLong(item);
+            if (bytes + size <= thresholdBytes || items.isEmpty()) {
+                items.add(item);
+                bytes += size;
+                return;
+            }
+        }
+        // NOTE: Once an item is spilled, the later items are spilled too, to keep the order.
+        try {
+            if (segment == null) {
+                openSegment();
+            }
+            final byte[] serialized = serializer.apply(item);
+            segmentOutput.writeInt(serialized.length);
+            segmentOutput.write(serialized);
+            segmentCount++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill the record to " + segment, e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segment =
+                directory.isPresent()
+                        ? Files.createTempFile(Paths.get(directory.get()), SEGMENT_PREFIX, ".spill")
+                        : Files.createTempFile(SEGMENT_PREFIX, ".spill");
+        segmentOutput =
+                new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment)));
+    }
+
+    public boolean isSpilled() {
+        return segment != null;
+    }
+
+    // NOTE: The items in memory are dropped from this queue as they are consumed. No item can be
+    //       added after this is called.
+    public Stream<T> stream() {
+        final Stream<T> inMemory =
+                StreamSupport.stream(
+                        Spliterators.spliterator(
+                                new DrainingIterator(), items.size(), Spliterator.ORDERED),
+                        false);
+        if (segment == null) {
+            return inMemory;
+        }
+        return Stream.concat(inMemory, readSegment());
+    }
+
+    private Stream<T> readSegment() {
+        try {
+            segmentOutput.close();
+            segmentInput =
+                    new DataInputStream(new BufferedInputStream(Files.newInputStream(segment)));
+            final DataInputStream input = segmentInput;
+            final Iterator<T> iterator =
+                    new Iterator<T>() {
+                        private long read = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return read < segmentCount;
+                        }
+
+                        @Override
+                        public T next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            try {
+                                final byte[] serialized = new byte[input.readInt()];
+                                input.readFully(serialized);
+                                if (++read == segmentCount) {
+                                    closeQuietly(input);
+                                }
+                                return deserializer.apply(serialized);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(
+                                        "Failed to read the spilled record from " + segment, e);
+                            }
+                        }
+                    };
+            return StreamSupport.stream(
+                    Spliterators.spliterator(iterator, segmentCount, Spliterator.ORDERED), false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the spilled records from " + segment, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        items.clear();
+        if (segment == null) {
+            return;
+        }
+        closeQuietly(segmentOutput);
+        if (segmentInput != null) {
+            closeQuietly(segmentInput);
+        }
+        try {
+            Files.deleteIfExists(segment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete " + segment, e);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // NOTE: Nothing to do for the stream that is no longer used.
+        }
+    }
+
+    private class DrainingIterator implements Iterator<T> {
+        @Override
+        public boolean hasNext() {
+            return !items.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            final T item = items.pollFirst();
+            if (item == null) {
+                throw new NoSuchElementException();
+            }
+            return item;
+        }
+    }
+}
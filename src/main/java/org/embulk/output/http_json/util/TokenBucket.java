@@ -0,0 +1,81 @@
+package org.embulk.output.http_json.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// NOTE: Refills 'tokensPerSecond' tokens per second, up to one second of tokens. A request larger
+//       than the bucket waits until it is full, and its debt delays the next requests. The buckets
+//       are shared by name and rate, so the limit applies to the whole job until they are cleared.
+public class TokenBucket {
+
+    private static final Map<String, TokenBucket> sharedBuckets = new HashMap<>();
+
+    private final double tokensPerSecond;
+    private final double capacity;
+
+    private double tokens;
+    private long refilledAtNanos;
+
+    TokenBucket(double tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+        this.capacity = Math.max(1.0, tokensPerSecond);
+        this.tokens = capacity;
+        this.refilledAtNanos = System.nanoTime();
+    }
+
+    public static synchronized TokenBucket shared(String name, double tokensPerSecond) {
+        return sharedBuckets.computeIfAbsent(
+                name + "@" + tokensPerSecond, k -> new TokenBucket(tokensPerSecond));
+    }
+
+    public static synchronized void clearShared() {
+        sharedBuckets.clear();
+    }
+
+    public void acquire(long permits) {
+        try {
+            long waitNanos;
+            while ((waitNanos = tryAcquire(permits)) > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    // NOTE: Takes the tokens without waiting and returns the nanoseconds to wait. The debt delays
+    //       the next callers, so non-blocking callers queue up like 'acquire'.
+    public synchronized long reserve(long permits) {
+        refill();
+        final long waitNanos = getWaitNanos(permits);
+        tokens -= permits;
+        return waitNanos;
+    }
+
+    // NOTE: Returns 0 if the tokens are taken, otherwise the nanoseconds to wait for them.
+    private synchronized long tryAcquire(long permits) {
+        refill();
+        final long waitNanos = getWaitNanos(permits);
+        if (waitNanos > 0) {
+            return waitNanos;
+        }
+        tokens -= permits;
+        return 0;
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAtNanos) * tokensPerSecond / 1e9);
+        refilledAtNanos = now;
+    }
+
+    private long getWaitNanos(long permits) {
+        final double required = Math.min(capacity, permits);
+        if (tokens < required) {
+            return Math.max(1L, (long) Math.ceil((required - tokens) / tokensPerSecond * 1e9));
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,66 @@
+package org.embulk.output.http_json.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import jersey.repackaged.com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+// NOTE: Transforms the request bodies apart from the requesting threads, so the next slices are
+//       transformed while the requests are in flight. It is started for each job and shared by its
+//       tasks, so it can use every core even with few tasks.
+public class TransformerWorkerPool {
+
+    private static ExecutorService executor;
+
+    private TransformerWorkerPool() {}
+
+    // NOTE: A pool left by a job that failed before 'shutdown' is replaced.
+    public static synchronized void start(int threads) {
+        shutdown();
+        executor = newExecutor(threads);
+    }
+
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    // NOTE: The tasks may run where the job has not started the pool.
+    private static synchronized ExecutorService getExecutor(int threads) {
+        if (executor == null) {
+            executor = newExecutor(threads);
+        }
+        return executor;
+    }
+
+    private static ExecutorService newExecutor(int threads) {
+        return Executors.newFixedThreadPool(
+                threads,
+                new ThreadFactoryBuilder()
+                        .setNameFormat(TransformerWorkerPool.class.getSimpleName() + "-%d")
+                        .setDaemon(true)
+                        .build());
+    }
+
+    public static <T> CompletableFuture<T> supply(int threads, Supplier<T> transformer) {
+        return CompletableFuture.supplyAsync(transformer, getExecutor(threads));
+    }
+
+    public static <T> T join(CompletableFuture<T> transformed) {
+        try {
+            return transformed.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
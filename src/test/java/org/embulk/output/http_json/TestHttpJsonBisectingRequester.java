@@ -0,0 +1,234 @@
+package org.embulk.output.http_json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+import javax.ws.rs.core.Response;
+import org.embulk.output.http_json.HttpJsonOutputPlugin.PluginTask;
+import org.embulk.output.http_json.extension.embulk.PluginTasks;
+import org.embulk.output.http_json.jackson.JacksonResponseCollector;
+import org.embulk.output.http_json.jaxrs.JAXRSJsonNodeTaskRequester;
+import org.embulk.output.http_json.jaxrs.JAXRSRequestListener;
+import org.embulk.output.http_json.jaxrs.JAXRSSplitRequestException;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestHttpJsonBisectingRequester {
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY =
+            ConfigMapperFactory.builder().addDefaultModules().build();
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JAXRSRequestListener NOOP_LISTENER =
+            new JAXRSRequestListener() {
+                @Override
+                public void onResponse(ObjectNode response, long elapsedMillis) {}
+
+                @Override
+                public void onRetry() {}
+            };
+
+    @RegisterExtension
+    static WireMockExtension wm =
+            WireMockExtension.newInstance()
+                    .options(WireMockConfiguration.wireMockConfig().dynamicPort())
+                    .build();
+
+    @TempDir Path tempDir;
+
+    // NOTE: "<offset>:<number of records>" of each request.
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testAcceptedRequestIsNotSplit() throws Exception {
+        final HttpJsonBisectingRequester requester = newRequester(Optional.empty());
+        final List<ObjectNode> responses =
+                requester
+                        .request(
+                                10,
+                                () -> request(records(1, 2, 3), 10L),
+                                () -> {
+                                    throw new AssertionError("records must not be read");
+                                })
+                        .get();
+        assertEquals(Arrays.asList("10:3"), requests);
+        assertEquals(Arrays.asList(3), sizes(responses));
+    }
+
+    @Test
+    public void testRejectsOnlyTheRecordsNotAcceptedAlone() throws Exception {
+        final Path rejectFile = tempDir.resolve("rejected.jsonl");
+        final HttpJsonBisectingRequester requester =
+                newRequester(Optional.of(rejectFile.toString()));
+        final List<JsonNode> records = records(1, 2, -3, 4, -5);
+        final List<ObjectNode> responses =
+                requester.request(0, () -> request(records, 0L), () -> records).get();
+        assertEquals(Arrays.asList("0:5", "0:2", "2:3", "2:1", "3:2", "3:1", "4:1"), requests);
+        assertEquals(Arrays.asList(2, 1), sizes(responses));
+        final List<String> rejected = Files.readAllLines(rejectFile, StandardCharsets.UTF_8);
+        assertEquals(2, rejected.size());
+        assertEquals(-3, mapper.readTree(rejected.get(0)).get("record").asInt());
+        assertEquals(-5, mapper.readTree(rejected.get(1)).get("record").asInt());
+        assertEquals(
+                400, mapper.readTree(rejected.get(0)).get("response").get("status_code").asInt());
+    }
+
+    @Test
+    public void testRejectsEveryRecord() throws Exception {
+        final JacksonResponseCollector collector =
+                new JacksonResponseCollector(JacksonResponseCollector.Retention.SUMMARY, 0);
+        final HttpJsonBisectingRequester requester = newRequester(Optional.empty(), collector);
+        final List<JsonNode> records = records(-1, -2);
+        final List<ObjectNode> responses =
+                requester.request(0, () -> request(records, 0L), () -> records).get();
+        assertEquals(Arrays.asList("0:2", "0:1", "1:1"), requests);
+        assertEquals(0, responses.size());
+        assertEquals(
+                2,
+                collector
+                        .writeTo(CONFIG_MAPPER_FACTORY.newTaskReport(), "r")
+                        .get(JsonNode.class, "r_summary")
+                        .get("rejected_record_count")
+                        .asInt());
+    }
+
+    @Test
+    public void testOtherFailureIsNotSplit() {
+        final IllegalStateException failure = new IllegalStateException("failed");
+        final HttpJsonBisectingRequester requester = newRequester(Optional.empty());
+        final CompletableFuture<ObjectNode> failed = new CompletableFuture<>();
+        failed.completeExceptionally(failure);
+        final ExecutionException e =
+                assertThrows(
+                        ExecutionException.class,
+                        () -> requester.request(0, () -> failed, () -> records(1, 2)).get());
+        assertSame(failure, e.getCause());
+        assertFalse(requests.contains("0:1"));
+    }
+
+    // NOTE: The halves get their own keys, and a re-run sends the same keys as long as the
+    //       records are sliced in the same way.
+    @Test
+    public void testSplitRequestsHaveStableIdempotencyKeys() throws Exception {
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .willReturn(WireMock.aResponse().withStatus(200).withBody("{}")));
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .withRequestBody(WireMock.containing("-"))
+                        .willReturn(WireMock.aResponse().withStatus(400).withBody("{}")));
+        final PluginTask task =
+                PluginTasks.of(
+                        wm.getPort(),
+                        "split_condition_jq",
+                        ".status_code == 400",
+                        "idempotency_key_header",
+                        "Idempotency-Key");
+        final List<JsonNode> records = records(1, 2, -3);
+        for (int run = 0; run < 2; run++) {
+            try (JAXRSJsonNodeTaskRequester taskRequester =
+                    JAXRSJsonNodeTaskRequester.of(task, 0, NOOP_LISTENER)) {
+                new HttpJsonBisectingRequester(
+                                taskRequester::requestWithRetryAsync,
+                                body -> mapper.createArrayNode().addAll(body),
+                                new HttpJsonRejectSink(
+                                        Optional.empty(),
+                                        false,
+                                        new JacksonResponseCollector(
+                                                JacksonResponseCollector.Retention.NONE, 0)))
+                        .request(
+                                5,
+                                () ->
+                                        taskRequester.requestWithRetryAsync(
+                                                mapper.createArrayNode().addAll(records), 5),
+                                () -> records)
+                        .get();
+            }
+        }
+        final List<String> keys =
+                wm.findAll(WireMock.postRequestedFor(WireMock.anyUrl())).stream()
+                        .map(request -> request.getHeader("Idempotency-Key"))
+                        .collect(Collectors.toList());
+        // NOTE: [1,2,-3] is split into [1] and [2,-3], and [2,-3] into [2] and [-3].
+        assertEquals(10, keys.size());
+        assertEquals(keys.subList(0, 5), keys.subList(5, 10));
+        assertEquals(5, new HashSet<>(keys).size());
+        assertEquals(
+                Arrays.asList("0-5", "0-5", "0-6", "0-6", "0-7"),
+                keys.subList(0, 5).stream()
+                        .map(key -> key.substring(0, key.lastIndexOf('-')))
+                        .collect(Collectors.toList()));
+    }
+
+    private HttpJsonBisectingRequester newRequester(Optional<String> rejectFilePath) {
+        return newRequester(
+                rejectFilePath,
+                new JacksonResponseCollector(JacksonResponseCollector.Retention.NONE, 0));
+    }
+
+    private HttpJsonBisectingRequester newRequester(
+            Optional<String> rejectFilePath, JacksonResponseCollector collector) {
+        return new HttpJsonBisectingRequester(
+                this::send,
+                records -> mapper.createArrayNode().addAll(records),
+                new HttpJsonRejectSink(rejectFilePath, false, collector));
+    }
+
+    private CompletableFuture<ObjectNode> request(List<JsonNode> records, long recordOffset) {
+        return send(mapper.createArrayNode().addAll(records), recordOffset);
+    }
+
+    // NOTE: A request with a negative record is to be split.
+    private CompletableFuture<ObjectNode> send(JsonNode body, Long recordOffset) {
+        requests.add(recordOffset + ":" + body.size());
+        final CompletableFuture<ObjectNode> response = new CompletableFuture<>();
+        boolean accepted = true;
+        for (JsonNode record : body) {
+            accepted &= record.asInt() >= 0;
+        }
+        if (accepted) {
+            response.complete(mapper.createObjectNode().put("size", body.size()));
+        } else {
+            final ObjectNode json = mapper.createObjectNode().put("status_code", 400);
+            response.completeExceptionally(
+                    new JAXRSSplitRequestException(json, Response.status(400).build()));
+        }
+        return response;
+    }
+
+    private static List<JsonNode> records(int... values) {
+        final ArrayNode records = mapper.createArrayNode();
+        for (int value : values) {
+            records.add(value);
+        }
+        final List<JsonNode> list = new ArrayList<>();
+        records.forEach(list::add);
+        return list;
+    }
+
+    private static List<Integer> sizes(List<ObjectNode> responses) {
+        return responses.stream().map(r -> r.get("size").asInt()).collect(Collectors.toList());
+    }
+}
@@ -1,18 +1,28 @@
 package org.embulk.output.http_json;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
 import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 import org.embulk.config.ConfigSource;
+import org.embulk.exec.PartialExecutionException;
+import org.embulk.exec.ResumeState;
 import org.embulk.input.config.ConfigInputPlugin;
 import org.embulk.output.http_json.extension.embulk.EmbulkExtension;
 import org.embulk.output.http_json.extension.embulk.EmbulkTester;
@@ -106,6 +116,878 @@ public class TestHttpJsonOutputPlugin {
                 lines.get(1));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamingFlushMode(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_streaming_flush_mode.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(200)
+                                        .withBody("{\"message\": \"ok\"}")
+                                        .withHeader("Content-Type", "application/json")
+                                        .withTransformer(
+                                                SaveRequestBodyResponseTransformer.NAME,
+                                                SaveRequestBodyResponseTransformer
+                                                        .OUTPUT_FILE_PATH_PARAMETER,
+                                                tempFile.toString())));
+
+        embulkTester.runOutput(
+                embulkTester.loadFromYamlString(
+                        String.join(
+                                "\n",
+                                "type: http_json",
+                                "scheme: http",
+                                "host: localhost",
+                                "port: " + wm.getPort(),
+                                "path: " + TEST_PATH,
+                                "method: POST",
+                                "buffer_size: 2",
+                                "flush_mode: streaming",
+                                "transformer_jq: '{events: (.)}'")),
+                schemaConfig(
+                        columnConfig("s", Types.STRING, emptyOption),
+                        columnConfig("i", Types.LONG, emptyOption)),
+                tasks(
+                        records(record("a", 5L), record("b", 6L), record("c", 7L)),
+                        records(record("x", 8L), record("y", 9L))));
+
+        List<String> lines = Files.readAllLines(tempFile);
+        Collections.sort(lines);
+        assertEquals(3, lines.size());
+        assertEquals("{\"events\":[{\"s\":\"a\",\"i\":5},{\"s\":\"b\",\"i\":6}]}", lines.get(0));
+        assertEquals("{\"events\":[{\"s\":\"c\",\"i\":7}]}", lines.get(1));
+        assertEquals("{\"events\":[{\"s\":\"x\",\"i\":8},{\"s\":\"y\",\"i\":9}]}", lines.get(2));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRecordTransformerJq(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_record_transformer_jq.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(200)
+                                        .withBody("{\"message\": \"ok\"}")
+                                        .withHeader("Content-Type", "application/json")
+                                        .withTransformer(
+                                                SaveRequestBodyResponseTransformer.NAME,
+                                                SaveRequestBodyResponseTransformer
+                                                        .OUTPUT_FILE_PATH_PARAMETER,
+                                                tempFile.toString())));
+
+        embulkTester.runOutput(
+                embulkTester.loadFromYamlString(
+                        String.join(
+                                "\n",
+                                "type: http_json",
+                                "scheme: http",
+                                "host: localhost",
+                                "port: " + wm.getPort(),
+                                "path: " + TEST_PATH,
+                                "method: POST",
+                                "buffer_size: 2",
+                                "record_transformer_jq: 'select(.i != 6) | {name: .s}'",
+                                "envelope_jq: '{events: ., count: length}'")),
+                schemaConfig(
+                        columnConfig("s", Types.STRING, emptyOption),
+                        columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record("a", 5L), record("b", 6L), record("c", 7L))));
+
+        List<String> lines = Files.readAllLines(tempFile);
+        Collections.sort(lines);
+        assertEquals(2, lines.size());
+        assertEquals("{\"events\":[{\"name\":\"a\"}],\"count\":1}", lines.get(0));
+        assertEquals("{\"events\":[{\"name\":\"c\"}],\"count\":1}", lines.get(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMaxConcurrentRequests(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_max_concurrent_requests.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse().withFixedDelay(500));
+
+        runOutput(
+                embulkTester,
+                Arrays.asList("buffer_size: 1", "max_concurrent_requests: 3"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L), record(3L), record(4L), record(5L))));
+
+        List<String> lines = Files.readAllLines(tempFile);
+        Collections.sort(lines);
+        assertEquals(
+                Arrays.asList(
+                        "[{\"i\":1}]", "[{\"i\":2}]", "[{\"i\":3}]", "[{\"i\":4}]", "[{\"i\":5}]"),
+                lines);
+        assertEquals(3, maxRequestsInFlight(500));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAsyncRequestEngine(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_async_request_engine.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse().withFixedDelay(500));
+
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "buffer_size: 1", "max_concurrent_requests: 3", "request_engine: async"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L), record(3L), record(4L), record(5L))));
+
+        List<String> lines = Files.readAllLines(tempFile);
+        Collections.sort(lines);
+        assertEquals(
+                Arrays.asList(
+                        "[{\"i\":1}]", "[{\"i\":2}]", "[{\"i\":3}]", "[{\"i\":4}]", "[{\"i\":5}]"),
+                lines);
+        assertEquals(3, maxRequestsInFlight(500));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResponsesAreReportedInOrder(EmbulkTester embulkTester) throws Throwable {
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        // NOTE: The later records are responded sooner.
+        for (long i = 1; i <= 4; i++) {
+            wm.stubFor(
+                    WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                            .withRequestBody(WireMock.equalToJson("[{\"i\":" + i + "}]"))
+                            .willReturn(
+                                    WireMock.aResponse()
+                                            .withStatus(200)
+                                            .withBody("{\"i\":" + i + "}")
+                                            .withFixedDelay((int) (5 - i) * 100)));
+        }
+        // NOTE: The second task fails after the first one is committed, so that the task report
+        //       of the first one can be read from the resume state.
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .withRequestBody(WireMock.equalToJson("[{\"i\":0}]"))
+                        .willReturn(WireMock.aResponse().withStatus(400).withFixedDelay(2000)));
+
+        for (String requestEngine : Arrays.asList("blocking", "async")) {
+            final PartialExecutionException e =
+                    assertThrows(
+                            PartialExecutionException.class,
+                            () ->
+                                    runOutput(
+                                            embulkTester,
+                                            Arrays.asList(
+                                                    "buffer_size: 1",
+                                                    "max_concurrent_requests: 4",
+                                                    "maximum_retries: 0",
+                                                    "request_engine: " + requestEngine),
+                                            schemaConfig(
+                                                    columnConfig("i", Types.LONG, emptyOption)),
+                                            tasks(
+                                                    records(
+                                                            record(1L),
+                                                            record(2L),
+                                                            record(3L),
+                                                            record(4L)),
+                                                    records(record(0L)))));
+
+            final JsonNode responses =
+                    e.getResumeState()
+                            .getOutputTaskReports()
+                            .get(0)
+                            .get()
+                            .get(JsonNode.class, "responses");
+            final List<Integer> order = new ArrayList<>();
+            responses.forEach(
+                    response -> order.add(response.get("response_body").get("i").asInt()));
+            assertEquals(Arrays.asList(1, 2, 3, 4), order);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testHttp2(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_http2.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "buffer_size: 1",
+                        "max_concurrent_requests: 2",
+                        "http_version: 2",
+                        "share_connection_pool: true"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L)), records(record(3L))));
+
+        List<String> lines = Files.readAllLines(tempFile);
+        Collections.sort(lines);
+        assertEquals(Arrays.asList("[{\"i\":1}]", "[{\"i\":2}]", "[{\"i\":3}]"), lines);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDirectPathWritesTheSameJsonAsTheTreePath(EmbulkTester embulkTester)
+            throws Throwable {
+        final Path directFile = Files.createFile(tempDir.resolve("test_direct_path.txt"));
+        final Path treeFile = Files.createFile(tempDir.resolve("test_tree_path.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        final SchemaConfig schemaConfig =
+                schemaConfig(
+                        columnConfig("s", Types.STRING, emptyOption),
+                        columnConfig("j", Types.JSON, emptyOption));
+        final List<List<List<Object>>> tasks =
+                tasks(
+                        records(
+                                record("a\"b", a(1L, 2.5d, "x")),
+                                record("c", m("k", a(true, null))),
+                                record("d", "text"),
+                                record("e", 1.5d),
+                                record(null, false)));
+
+        stubSavingRequestBody(directFile, WireMock.aResponse());
+        runOutput(
+                embulkTester,
+                Arrays.asList("fill_json_null_for_embulk_null: true"),
+                schemaConfig,
+                tasks);
+        wm.resetAll();
+        stubSavingRequestBody(treeFile, WireMock.aResponse());
+        // NOTE: record_transformer_jq makes the records go through json nodes.
+        runOutput(
+                embulkTester,
+                Arrays.asList("fill_json_null_for_embulk_null: true", "record_transformer_jq: '.'"),
+                schemaConfig,
+                tasks);
+
+        assertEquals(Files.readAllLines(treeFile), Files.readAllLines(directFile));
+        assertEquals(1, Files.readAllLines(directFile).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMaxRequestBytes(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_max_request_bytes.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+
+        // NOTE: [{"i":1},{"i":2}] is 17 bytes.
+        runOutput(
+                embulkTester,
+                Arrays.asList("buffer_size: 100", "max_request_bytes: 17"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L), record(3L), record(4L), record(5L))));
+
+        assertEquals(
+                Arrays.asList("[{\"i\":1},{\"i\":2}]", "[{\"i\":3},{\"i\":4}]", "[{\"i\":5}]"),
+                Files.readAllLines(tempFile));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRequestCompression(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_request_compression.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+
+        runOutput(
+                embulkTester,
+                Arrays.asList("request_compression: gzip", "request_compression_level: 9"),
+                schemaConfig(
+                        columnConfig("s", Types.STRING, emptyOption),
+                        columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record("a", 5L), record("b", 6L))));
+
+        // NOTE: WireMock decompresses gzip request bodies.
+        assertEquals(
+                Arrays.asList("[{\"s\":\"a\",\"i\":5},{\"s\":\"b\",\"i\":6}]"),
+                Files.readAllLines(tempFile));
+        wm.verify(
+                WireMock.postRequestedFor(WireMock.urlPathEqualTo(TEST_PATH))
+                        .withHeader("Content-Encoding", WireMock.equalTo("gzip")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRetriedServerError(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_retried_server_error.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .inScenario("server_error")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willSetStateTo("recovered")
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(503)
+                                        .withBody("{\"message\": \"unavailable\"}")));
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .inScenario("server_error")
+                        .whenScenarioStateIs("recovered")
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(200)
+                                        .withBody("{\"message\": \"ok\"}")
+                                        .withTransformer(
+                                                SaveRequestBodyResponseTransformer.NAME,
+                                                SaveRequestBodyResponseTransformer
+                                                        .OUTPUT_FILE_PATH_PARAMETER,
+                                                tempFile.toString())));
+
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "response_retention: errors",
+                        "initial_retry_interval_millis: 1",
+                        "retryable_condition_jq: '.status_code_class == 500'"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L))));
+
+        assertEquals(Arrays.asList("[{\"i\":1}]"), Files.readAllLines(tempFile));
+        wm.verify(2, WireMock.postRequestedFor(WireMock.urlPathEqualTo(TEST_PATH)));
+    }
+
+    @Test
+    public void testRetryAfter(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_retry_after.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .inScenario("retry_after")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willSetStateTo("retried")
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(429)
+                                        .withHeader("Retry-After", "1")
+                                        .withBody("{\"message\": \"too many requests\"}")));
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .inScenario("retry_after")
+                        .whenScenarioStateIs("retried")
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(200)
+                                        .withBody("{\"message\": \"ok\"}")
+                                        .withTransformer(
+                                                SaveRequestBodyResponseTransformer.NAME,
+                                                SaveRequestBodyResponseTransformer
+                                                        .OUTPUT_FILE_PATH_PARAMETER,
+                                                tempFile.toString())));
+
+        final long startNanos = System.nanoTime();
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "initial_retry_interval_millis: 1",
+                        "maximum_retry_interval_millis: 10",
+                        "retry_jitter: true",
+                        "respect_retry_after: true",
+                        "maximum_retry_after_millis: 5000"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L))));
+
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.SECONDS.toNanos(1));
+        assertEquals(Arrays.asList("[{\"i\":1}]"), Files.readAllLines(tempFile));
+        wm.verify(2, WireMock.postRequestedFor(WireMock.urlPathEqualTo(TEST_PATH)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSpill(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_spill.txt"));
+        final Path spillDirectory = Files.createDirectory(tempDir.resolve("spill"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "buffer_size: 2",
+                        "flush_mode: commit",
+                        "spill_threshold_bytes: 1",
+                        "spill_directory: " + spillDirectory),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L), record(3L), record(4L), record(5L))));
+
+        assertEquals(
+                Arrays.asList("[{\"i\":1},{\"i\":2}]", "[{\"i\":3},{\"i\":4}]", "[{\"i\":5}]"),
+                Files.readAllLines(tempFile));
+        try (Stream<Path> spilled = Files.list(spillDirectory)) {
+            assertEquals(0, spilled.count());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testJournalSkipsAcknowledgedRecords(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_journal.txt"));
+        final Path journalDirectory = Files.createDirectory(tempDir.resolve("journal"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+        // NOTE: The first record of the task is acknowledged by the previous run.
+        Files.write(journalDirectory.resolve("task-000000.journal"), Arrays.asList("1"));
+
+        for (String transformerJq : Arrays.asList(".", "map(.)")) {
+            Files.write(tempFile, new byte[0]);
+            runOutput(
+                    embulkTester,
+                    Arrays.asList(
+                            "buffer_size: 2",
+                            "flush_mode: streaming",
+                            "transformer_jq: '" + transformerJq + "'",
+                            "journal_directory: " + journalDirectory),
+                    schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                    tasks(records(record(1L), record(2L), record(3L), record(4L), record(5L))));
+
+            // NOTE: The slices start right after the acknowledged record.
+            assertEquals(
+                    Arrays.asList("[{\"i\":2},{\"i\":3}]", "[{\"i\":4},{\"i\":5}]"),
+                    Files.readAllLines(tempFile));
+            // NOTE: The journal is deleted when all tasks are committed.
+            try (Stream<Path> journals = Files.list(journalDirectory)) {
+                assertEquals(0, journals.count());
+            }
+            Files.write(journalDirectory.resolve("task-000000.journal"), Arrays.asList("1"));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResume(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_resume.txt"));
+        final Path journalDirectory = Files.createDirectory(tempDir.resolve("resume_journal"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        final List<String> options =
+                Arrays.asList(
+                        "buffer_size: 2",
+                        "flush_mode: streaming",
+                        "maximum_retries: 0",
+                        "journal_directory: " + journalDirectory);
+        final SchemaConfig schemaConfig = schemaConfig(columnConfig("i", Types.LONG, emptyOption));
+        final List<List<List<Object>>> tasks =
+                tasks(records(record(1L), record(2L), record(3L), record(4L), record(5L)));
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .atPriority(1)
+                        .withRequestBody(WireMock.containing("{\"i\":3}"))
+                        .willReturn(WireMock.aResponse().withStatus(400).withBody("{}")));
+
+        final PartialExecutionException e =
+                assertThrows(
+                        PartialExecutionException.class,
+                        () -> runOutput(embulkTester, options, schemaConfig, tasks));
+        assertEquals(Arrays.asList("[{\"i\":1},{\"i\":2}]"), Files.readAllLines(tempFile));
+
+        wm.resetAll();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+        Files.write(tempFile, new byte[0]);
+        resumeOutput(embulkTester, options, schemaConfig, tasks, e.getResumeState());
+
+        // NOTE: The resumed task skips the records acknowledged before the failure.
+        assertEquals(
+                Arrays.asList("[{\"i\":3},{\"i\":4}]", "[{\"i\":5}]"),
+                Files.readAllLines(tempFile));
+        try (Stream<Path> journals = Files.list(journalDirectory)) {
+            assertEquals(0, journals.count());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIdempotencyKeyHeader(EmbulkTester embulkTester) throws Throwable {
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .willReturn(WireMock.aResponse().withStatus(200).withBody("{}")));
+
+        runOutput(
+                embulkTester,
+                Arrays.asList("buffer_size: 2", "idempotency_key_header: Idempotency-Key"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L), record(3L))));
+
+        final List<String> keys = new ArrayList<>();
+        wm.findAll(WireMock.postRequestedFor(WireMock.urlPathEqualTo(TEST_PATH)))
+                .forEach(request -> keys.add(request.getHeader("Idempotency-Key")));
+        Collections.sort(keys);
+        assertEquals(2, keys.size());
+        assertTrue(keys.get(0).matches("0-0-[0-9a-f]{64}"), keys.get(0));
+        assertTrue(keys.get(1).matches("0-2-[0-9a-f]{64}"), keys.get(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testConnectionSettings(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_connection_settings.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "buffer_size: 1",
+                        "max_concurrent_requests: 2",
+                        "max_connections: 1",
+                        "idle_connection_timeout_millis: 1000",
+                        "connect_timeout_millis: 1000",
+                        "read_timeout_millis: 1000"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L), record(3L))));
+
+        List<String> lines = Files.readAllLines(tempFile);
+        Collections.sort(lines);
+        assertEquals(Arrays.asList("[{\"i\":1}]", "[{\"i\":2}]", "[{\"i\":3}]"), lines);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReadTimeout(EmbulkTester embulkTester) throws Throwable {
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(200)
+                                        .withBody("{}")
+                                        .withFixedDelay(2000)));
+
+        assertThrows(
+                Exception.class,
+                () ->
+                        runOutput(
+                                embulkTester,
+                                Arrays.asList(
+                                        "read_timeout_millis: 100",
+                                        "maximum_retries: 1",
+                                        "initial_retry_interval_millis: 1"),
+                                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                                tasks(records(record(1L)))));
+        // NOTE: The timed out request is retried.
+        wm.verify(2, WireMock.postRequestedFor(WireMock.urlPathEqualTo(TEST_PATH)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResponseRetention(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_response_retention.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+
+        for (String retention :
+                Arrays.asList("all", "none", "summary", "first", "sampled", "errors")) {
+            Files.write(tempFile, new byte[0]);
+            runOutput(
+                    embulkTester,
+                    Arrays.asList(
+                            "buffer_size: 1",
+                            "response_retention: " + retention,
+                            "response_retention_count: 1"),
+                    schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                    tasks(records(record(1L), record(2L))));
+
+            assertEquals(
+                    Arrays.asList("[{\"i\":1}]", "[{\"i\":2}]"),
+                    Files.readAllLines(tempFile),
+                    retention);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTransformerThreads(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_transformer_threads.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "buffer_size: 1",
+                        "max_concurrent_requests: 2",
+                        "transformer_threads: 1",
+                        "transformer_jq: '{events: (.)}'"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L)), records(record(3L))));
+
+        List<String> lines = Files.readAllLines(tempFile);
+        Collections.sort(lines);
+        assertEquals(
+                Arrays.asList(
+                        "{\"events\":[{\"i\":1}]}",
+                        "{\"events\":[{\"i\":2}]}",
+                        "{\"events\":[{\"i\":3}]}"),
+                lines);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAdaptiveBufferSize(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_adaptive_buffer_size.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse().withFixedDelay(200));
+        final List<List<Object>> records = new ArrayList<>();
+        for (long i = 1; i <= 12; i++) {
+            records.add(record(i));
+        }
+
+        // NOTE: The default 'transformer_jq' is tested too, because it would use the direct path.
+        for (String transformerJq : Arrays.asList("map(.)", ".")) {
+            Files.write(tempFile, new byte[0]);
+            runOutput(
+                    embulkTester,
+                    Arrays.asList(
+                            "buffer_size: 4",
+                            "flush_mode: commit",
+                            "transformer_jq: '" + transformerJq + "'",
+                            "adaptive_buffer_size: true",
+                            "min_buffer_size: 1",
+                            "target_response_time_millis: 100"),
+                    schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                    tasks(records));
+
+            // NOTE: Every response is slower than the target, so the slices only shrink.
+            final List<Integer> sizes = new ArrayList<>();
+            final StringBuilder sent = new StringBuilder();
+            for (String line : Files.readAllLines(tempFile)) {
+                sizes.add(line.split("\\},\\{").length);
+                sent.append(line);
+            }
+            assertEquals(4, (int) sizes.get(0));
+            assertEquals(1, (int) sizes.get(sizes.size() - 1));
+            for (int i = 1; i < sizes.size(); i++) {
+                assertTrue(sizes.get(i) <= sizes.get(i - 1), sizes.toString());
+            }
+            final StringBuilder expected = new StringBuilder();
+            for (int i = 1; i <= 12; i++) {
+                expected.append("{\"i\":").append(i).append('}');
+            }
+            assertEquals(expected.toString(), sent.toString().replaceAll("[\\[\\],]", ""));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSplitConditionJq(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_split_condition_jq.txt"));
+        final Path rejectFile = tempDir.resolve("test_split_condition_jq_rejected.jsonl");
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+        // NOTE: A request with a negative value is rejected as a whole.
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .withRequestBody(WireMock.containing("-"))
+                        .willReturn(WireMock.aResponse().withStatus(400).withBody("{}")));
+
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "buffer_size: 4",
+                        "split_condition_jq: '.status_code == 400'",
+                        "reject_file_path: " + rejectFile),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L), record(-3L), record(4L))));
+
+        assertEquals(
+                Arrays.asList("[{\"i\":1},{\"i\":2}]", "[{\"i\":4}]"),
+                Files.readAllLines(tempFile));
+        final List<String> rejected = Files.readAllLines(rejectFile);
+        assertEquals(1, rejected.size());
+        assertTrue(rejected.get(0).contains("{\"i\":-3}"), rejected.get(0));
+        // NOTE: [1,2,-3,4], [1,2], [-3,4], [-3] and [4].
+        wm.verify(5, WireMock.postRequestedFor(WireMock.urlPathEqualTo(TEST_PATH)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRequestsPerSecond(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_requests_per_second.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+        final long startNanos = System.nanoTime();
+
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "buffer_size: 1", "max_concurrent_requests: 3", "requests_per_second: 1"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L), record(3L))));
+
+        // NOTE: The bucket holds the tokens of one second, so the second and the third requests
+        //       wait for a second each.
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(1900));
+        assertEquals(3, Files.readAllLines(tempFile).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBytesPerSecond(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_bytes_per_second.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+        final long startNanos = System.nanoTime();
+
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "buffer_size: 1", "max_concurrent_requests: 3", "bytes_per_second: 9"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L), record(2L), record(3L))));
+
+        // NOTE: Each body [{"i":n}] is 9 bytes, so the bucket holds one of them.
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(1900));
+        assertEquals(3, Files.readAllLines(tempFile).size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAdaptiveBufferSizeIsCappedByTheMaximum(EmbulkTester embulkTester)
+            throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_max_buffer_size.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        stubSavingRequestBody(tempFile, WireMock.aResponse());
+        final List<List<Object>> records = new ArrayList<>();
+        for (long i = 1; i <= 12; i++) {
+            records.add(record(i));
+        }
+
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "buffer_size: 1",
+                        "flush_mode: commit",
+                        "transformer_jq: 'map(.)'",
+                        "adaptive_buffer_size: true",
+                        "max_buffer_size: 2",
+                        "target_response_time_millis: 10000"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records));
+
+        int sent = 0;
+        for (String line : Files.readAllLines(tempFile)) {
+            final int size = line.split("\\},\\{").length;
+            assertTrue(size <= 2, line);
+            sent += size;
+        }
+        assertEquals(12, sent);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRetryIntervalJq(EmbulkTester embulkTester) throws Throwable {
+        final Path tempFile = Files.createFile(tempDir.resolve("test_retry_interval_jq.txt"));
+        final ConfigSource emptyOption = embulkTester.newConfigSource();
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .inScenario("retry_interval_jq")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willSetStateTo("retried")
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(503)
+                                        .withHeader("Content-Type", "application/json")
+                                        .withBody("{\"retry_after_seconds\": 1}")));
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .inScenario("retry_interval_jq")
+                        .whenScenarioStateIs("retried")
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(200)
+                                        .withBody("{\"message\": \"ok\"}")
+                                        .withTransformer(
+                                                SaveRequestBodyResponseTransformer.NAME,
+                                                SaveRequestBodyResponseTransformer
+                                                        .OUTPUT_FILE_PATH_PARAMETER,
+                                                tempFile.toString())));
+
+        final long startNanos = System.nanoTime();
+        runOutput(
+                embulkTester,
+                Arrays.asList(
+                        "initial_retry_interval_millis: 1",
+                        "maximum_retry_interval_millis: 10",
+                        "maximum_retry_after_millis: 5000",
+                        "retry_interval_jq: '.response_body.retry_after_seconds * 1000'"),
+                schemaConfig(columnConfig("i", Types.LONG, emptyOption)),
+                tasks(records(record(1L))));
+
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.SECONDS.toNanos(1));
+        assertEquals(Arrays.asList("[{\"i\":1}]"), Files.readAllLines(tempFile));
+        wm.verify(2, WireMock.postRequestedFor(WireMock.urlPathEqualTo(TEST_PATH)));
+    }
+
+    // NOTE: Every request is responded after 'delayMillis', so the requests received within that
+    //       time from another one were in flight together.
+    private static int maxRequestsInFlight(long delayMillis) {
+        final List<Long> received = new ArrayList<>();
+        wm.getAllServeEvents()
+                .forEach(event -> received.add(event.getRequest().getLoggedDate().getTime()));
+        int max = 0;
+        for (long start : received) {
+            max =
+                    Math.max(
+                            max,
+                            (int)
+                                    received.stream()
+                                            .filter(t -> start <= t && t < start + delayMillis)
+                                            .count());
+        }
+        return max;
+    }
+
+    private void stubSavingRequestBody(Path tempFile, ResponseDefinitionBuilder response) {
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo(TEST_PATH))
+                        .willReturn(
+                                response.withStatus(200)
+                                        .withBody("{\"message\": \"ok\"}")
+                                        .withHeader("Content-Type", "application/json")
+                                        .withTransformer(
+                                                SaveRequestBodyResponseTransformer.NAME,
+                                                SaveRequestBodyResponseTransformer
+                                                        .OUTPUT_FILE_PATH_PARAMETER,
+                                                tempFile.toString())));
+    }
+
+    private void runOutput(
+            EmbulkTester embulkTester,
+            List<String> options,
+            SchemaConfig schemaConfig,
+            List<List<List<Object>>> tasks) {
+        embulkTester.runOutput(outConfig(embulkTester, options), schemaConfig, tasks);
+    }
+
+    private void resumeOutput(
+            EmbulkTester embulkTester,
+            List<String> options,
+            SchemaConfig schemaConfig,
+            List<List<List<Object>>> tasks,
+            ResumeState resumeState) {
+        embulkTester.resumeOutput(
+                outConfig(embulkTester, options), schemaConfig, tasks, resumeState);
+    }
+
+    private ConfigSource outConfig(EmbulkTester embulkTester, List<String> options) {
+        final List<String> lines = new ArrayList<>();
+        lines.add("type: http_json");
+        lines.add("scheme: http");
+        lines.add("host: localhost");
+        lines.add("port: " + wm.getPort());
+        lines.add("path: " + TEST_PATH);
+        lines.add("method: POST");
+        lines.addAll(options);
+        return embulkTester.loadFromYamlString(String.join("\n", lines));
+    }
+
     @SuppressWarnings("unchecked")
     private List<List<List<Object>>> tasks(List<List<Object>>... tasks) {
         List<List<List<Object>>> result = new ArrayList<>();
@@ -0,0 +1,134 @@
+package org.embulk.output.http_json;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestHttpJsonRequestJournal {
+
+    @TempDir Path tempDir;
+
+    @Test
+    public void testNothingIsSkippedWithoutDirectory() {
+        try (HttpJsonRequestJournal journal = HttpJsonRequestJournal.open(Optional.empty(), 0)) {
+            assertFalse(journal.skipsRecord());
+            assertEquals(0, journal.onSliced(2));
+            assertEquals(2, journal.onSliced(3));
+            journal.onAcknowledged();
+            journal.onAcknowledged();
+        }
+    }
+
+    @Test
+    public void testAcknowledgedRecordsAreSkippedOnResume() {
+        try (HttpJsonRequestJournal journal = open(0)) {
+            assertEquals(0, journal.onSliced(2));
+            assertEquals(2, journal.onSliced(3));
+            assertEquals(5, journal.onSliced(4));
+            journal.onAcknowledged();
+            journal.onAcknowledged();
+        }
+        try (HttpJsonRequestJournal journal = open(0)) {
+            for (int i = 0; i < 5; i++) {
+                assertTrue(journal.skipsRecord());
+            }
+            assertFalse(journal.skipsRecord());
+            // NOTE: The offsets continue from the acknowledged records.
+            assertEquals(5, journal.onSliced(4));
+        }
+    }
+
+    @Test
+    public void testJournalsAreSeparatedByTask() {
+        try (HttpJsonRequestJournal journal = open(0)) {
+            journal.onSliced(2);
+            journal.onAcknowledged();
+        }
+        try (HttpJsonRequestJournal journal = open(1)) {
+            assertFalse(journal.skipsRecord());
+        }
+    }
+
+    @Test
+    public void testFileIsNotOpenedUntilAcknowledged() throws IOException {
+        try (HttpJsonRequestJournal journal = open(0)) {
+            journal.onSliced(2);
+            assertEquals(0, countFiles());
+            journal.onAcknowledged();
+            assertEquals(1, countFiles());
+        }
+        try (HttpJsonRequestJournal journal = open(1)) {
+            journal.onSliced(2);
+        }
+        assertFalse(Files.exists(tempDir.resolve("task-000001.journal")));
+    }
+
+    @Test
+    public void testTornLastLineIsIgnored() throws IOException {
+        Files.write(
+                tempDir.resolve("task-000000.journal"), "2\n5\n7".getBytes(StandardCharsets.UTF_8));
+        try (HttpJsonRequestJournal journal = open(0)) {
+            assertEquals(5, countSkipped(journal, 10));
+        }
+    }
+
+    @Test
+    public void testJournalsAreDeleted() throws IOException {
+        for (int taskIndex = 0; taskIndex < 2; taskIndex++) {
+            try (HttpJsonRequestJournal journal = open(taskIndex)) {
+                journal.onSliced(1);
+                journal.onAcknowledged();
+            }
+        }
+        HttpJsonRequestJournal.delete(Optional.of(tempDir.toString()), 2);
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void testLinesAreAppended() throws IOException {
+        try (HttpJsonRequestJournal journal = open(0)) {
+            journal.onSliced(2);
+            journal.onSliced(3);
+            journal.onAcknowledged();
+            journal.onAcknowledged();
+        }
+        try (HttpJsonRequestJournal journal = open(0)) {
+            countSkipped(journal, 5);
+            journal.onSliced(1);
+            journal.onAcknowledged();
+        }
+        assertEquals(
+                Arrays.asList("2", "5", "6"),
+                Files.readAllLines(tempDir.resolve("task-000000.journal")));
+    }
+
+    private HttpJsonRequestJournal open(int taskIndex) {
+        return HttpJsonRequestJournal.open(Optional.of(tempDir.toString()), taskIndex);
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    private static int countSkipped(HttpJsonRequestJournal journal, int records) {
+        int skipped = 0;
+        for (int i = 0; i < records; i++) {
+            if (journal.skipsRecord()) {
+                skipped++;
+            }
+        }
+        return skipped;
+    }
+}
@@ -7,6 +7,7 @@ import org.embulk.config.ConfigLoader;
 import org.embulk.config.ConfigSource;
 import org.embulk.exec.BulkLoader;
 import org.embulk.exec.ExecutionResult;
+import org.embulk.exec.ResumeState;
 import org.embulk.spi.ExecSessionInternal;
 import org.embulk.util.config.units.SchemaConfig;
 
@@ -25,6 +26,24 @@ public class EmbulkTester implements AutoCloseable {
 
     public ExecutionResult runOutput(
             ConfigSource outConfig, SchemaConfig inSchema, List<List<List<Object>>> inData) {
+        return exec(buildConfig(outConfig, inSchema, inData));
+    }
+
+    // NOTE: 'resumeState' is taken from the PartialExecutionException thrown by 'runOutput'.
+    public ExecutionResult resumeOutput(
+            ConfigSource outConfig,
+            SchemaConfig inSchema,
+            List<List<List<Object>>> inData,
+            ResumeState resumeState) {
+        if (closed.get()) {
+            throw new IllegalStateException("EmbulkTester is already closed.");
+        }
+        return new BulkLoader(embulkSystemProperties)
+                .resume(execSessionInternal, buildConfig(outConfig, inSchema, inData), resumeState);
+    }
+
+    private ConfigSource buildConfig(
+            ConfigSource outConfig, SchemaConfig inSchema, List<List<List<Object>>> inData) {
         ConfigSource execConfig = newConfigSource().set("min_output_tasks", 1);
         ConfigSource inConfig =
                 newConfigSource()
@@ -33,7 +52,7 @@ public class EmbulkTester implements AutoCloseable {
                         .set("values", inData);
         ConfigSource config =
                 newConfigSource().set("exec", execConfig).set("in", inConfig).set("out", outConfig);
-        return exec(config);
+        return config;
     }
 
     private ExecutionResult exec(ConfigSource config) {
@@ -0,0 +1,29 @@
+package org.embulk.output.http_json.extension.embulk;
+
+import org.embulk.config.ConfigSource;
+import org.embulk.output.http_json.HttpJsonOutputPlugin.PluginTask;
+import org.embulk.util.config.ConfigMapperFactory;
+
+public class PluginTasks {
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY =
+            ConfigMapperFactory.builder().addDefaultModules().build();
+
+    private PluginTasks() {}
+
+    // NOTE: 'options' are the names and the values of the options, one after another.
+    public static PluginTask of(int port, Object... options) {
+        ConfigSource config =
+                CONFIG_MAPPER_FACTORY
+                        .newConfigSource()
+                        .set("scheme", "http")
+                        .set("host", "localhost")
+                        .set("port", port)
+                        .set("path", "/test")
+                        .set("method", "POST");
+        for (int i = 0; i < options.length; i += 2) {
+            config.set((String) options[i], options[i + 1]);
+        }
+        return CONFIG_MAPPER_FACTORY.createConfigMapper().map(config, PluginTask.class);
+    }
+}
@@ -0,0 +1,76 @@
+package org.embulk.output.http_json.jackson;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.msgpack.value.ValueFactory;
+
+public class TestJacksonJsonArrayBuffer {
+
+    @Test
+    public void testTakeAll() throws IOException {
+        JacksonJsonArrayBuffer buffer = new JacksonJsonArrayBuffer();
+        assertEquals(2, buffer.getArraySize());
+        appendRecord(buffer, 1);
+        appendRecord(buffer, 2);
+        assertEquals(2, buffer.getRecordCount());
+        assertEquals("[{\"i\":1},{\"i\":2}]".length(), buffer.getArraySize());
+        assertEquals("[{\"i\":1},{\"i\":2}]", toString(buffer.takeAll()));
+        assertEquals(0, buffer.getRecordCount());
+
+        appendRecord(buffer, 3);
+        assertEquals("[{\"i\":3}]", toString(buffer.takeAll()));
+        buffer.close();
+    }
+
+    @Test
+    public void testTakeAllButLast() throws IOException {
+        JacksonJsonArrayBuffer buffer = new JacksonJsonArrayBuffer();
+        appendRecord(buffer, 1);
+        appendRecord(buffer, 2);
+        int lastRecordOffset = appendRecord(buffer, 3);
+        assertEquals("[{\"i\":1},{\"i\":2}]", toString(buffer.takeAllButLast(lastRecordOffset)));
+        assertEquals(1, buffer.getRecordCount());
+        assertEquals("[{\"i\":3}]".length(), buffer.getArraySize());
+
+        appendRecord(buffer, 4);
+        assertEquals("[{\"i\":3},{\"i\":4}]", toString(buffer.takeAll()));
+        buffer.close();
+    }
+
+    @Test
+    public void testTakeAllButLastOfTwoRecords() throws IOException {
+        JacksonJsonArrayBuffer buffer = new JacksonJsonArrayBuffer();
+        appendRecord(buffer, 1);
+        int lastRecordOffset = appendRecord(buffer, 2);
+        assertEquals("[{\"i\":1}]", toString(buffer.takeAllButLast(lastRecordOffset)));
+        assertEquals("[{\"i\":2}]", toString(buffer.takeAll()));
+        buffer.close();
+    }
+
+    @Test
+    public void testGeneratorWritesJsonColumns() throws IOException {
+        JacksonJsonArrayBuffer buffer = new JacksonJsonArrayBuffer();
+        buffer.append(
+                generator ->
+                        JacksonMsgpackValues.writeColumn(
+                                ValueFactory.newFloat(Double.NaN), generator));
+        assertEquals("[\"NaN\"]", toString(buffer.takeAll()));
+        buffer.close();
+    }
+
+    private static int appendRecord(JacksonJsonArrayBuffer buffer, int i) throws IOException {
+        return buffer.append(
+                generator -> {
+                    generator.writeStartObject();
+                    generator.writeNumberField("i", i);
+                    generator.writeEndObject();
+                });
+    }
+
+    private static String toString(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,145 @@
+package org.embulk.output.http_json.jackson;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+public class TestJacksonMsgpackValues {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testScalars() throws IOException {
+        assertSameAsToJson(ValueFactory.newNil());
+        assertSameAsToJson(ValueFactory.newBoolean(false));
+        assertSameAsToJson(ValueFactory.newInteger(Long.MIN_VALUE));
+        assertSameAsToJson(ValueFactory.newFloat(-0.25d));
+        assertSameAsToJson(ValueFactory.newString("\u3042\ud83d\ude00\t"));
+    }
+
+    @Test
+    public void testBigInteger() throws IOException {
+        assertSameAsToJson(
+                ValueFactory.newInteger(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE)));
+    }
+
+    @Test
+    public void testNonFiniteFloatsAreNull() throws IOException {
+        assertSameAsToJson(ValueFactory.newFloat(Double.NaN));
+        assertSameAsToJson(ValueFactory.newFloat(Double.NEGATIVE_INFINITY));
+        assertEquals(
+                "[null]",
+                toJson(ValueFactory.newArray(ValueFactory.newFloat(Double.POSITIVE_INFINITY))));
+    }
+
+    @Test
+    public void testBinaryAndExtension() throws IOException {
+        assertSameAsToJson(ValueFactory.newBinary("bin".getBytes(StandardCharsets.UTF_8)));
+        assertSameAsToJson(
+                ValueFactory.newExtension((byte) -1, new byte[] {0x00, 0x7f, (byte) 0x80, -1}));
+    }
+
+    @Test
+    public void testNestedContainers() throws IOException {
+        assertSameAsToJson(
+                ValueFactory.newArray(
+                        ValueFactory.newArray(),
+                        ValueFactory.emptyMap(),
+                        ValueFactory.newMap(
+                                ValueFactory.newString("a"),
+                                ValueFactory.newArray(
+                                        ValueFactory.newInteger(1L), ValueFactory.newNil()))));
+    }
+
+    @Test
+    public void testNonStringMapKeys() throws IOException {
+        assertSameAsToJson(
+                ValueFactory.newMap(
+                        ValueFactory.newInteger(1L),
+                        ValueFactory.newString("one"),
+                        ValueFactory.newBoolean(true),
+                        ValueFactory.newString("true"),
+                        ValueFactory.newBinary("k".getBytes(StandardCharsets.UTF_8)),
+                        ValueFactory.newString("binary")));
+    }
+
+    @Test
+    public void testWriteColumnScalars() throws IOException {
+        assertWriteColumn(ValueFactory.newNil());
+        assertWriteColumn(ValueFactory.newBoolean(true));
+        assertWriteColumn(ValueFactory.newInteger(-5L));
+        assertWriteColumn(ValueFactory.newFloat(5.5d));
+        assertWriteColumn(ValueFactory.newString("a\"b\n"));
+    }
+
+    @Test
+    public void testWriteColumnNonFiniteFloats() throws IOException {
+        assertWriteColumn(ValueFactory.newFloat(Double.NaN));
+        assertWriteColumn(ValueFactory.newFloat(Double.POSITIVE_INFINITY));
+        assertWriteColumn(ValueFactory.newFloat(Double.NEGATIVE_INFINITY));
+        assertEquals("\"NaN\"", writeColumn(ValueFactory.newFloat(Double.NaN)));
+    }
+
+    @Test
+    public void testWriteColumnBinaryAndExtension() throws IOException {
+        assertWriteColumn(ValueFactory.newBinary("bin".getBytes(StandardCharsets.UTF_8)));
+        assertWriteColumn(ValueFactory.newExtension((byte) 1, new byte[] {0x0a, (byte) 0xff}));
+    }
+
+    @Test
+    public void testWriteColumnContainers() throws IOException {
+        assertWriteColumn(
+                ValueFactory.newArray(
+                        ValueFactory.newFloat(Double.NaN),
+                        ValueFactory.newBinary(new byte[] {0x61}),
+                        ValueFactory.newExtension((byte) 2, new byte[] {0x01})));
+        assertWriteColumn(
+                ValueFactory.newMap(
+                        ValueFactory.newString("a"),
+                        ValueFactory.newArray(ValueFactory.newInteger(1L)),
+                        ValueFactory.newInteger(2L),
+                        ValueFactory.newBoolean(false)));
+    }
+
+    private static void assertSameAsToJson(Value v) throws IOException {
+        String expected = mapper.writeValueAsString(mapper.readTree(v.toJson()));
+        assertEquals(
+                expected,
+                mapper.writeValueAsString(JacksonMsgpackValues.toJsonNode(v)),
+                v.toString());
+        assertEquals(expected, toJson(v), v.toString());
+    }
+
+    private static String toJson(Value v) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(writer)) {
+            JacksonMsgpackValues.write(v, generator);
+        }
+        return writer.toString();
+    }
+
+    // NOTE: The direct page path writes json columns by 'writeColumn', and the tree path
+    //       serializes 'toColumnJsonNode'.
+    private static void assertWriteColumn(Value v) throws IOException {
+        assertEquals(
+                mapper.writeValueAsString(JacksonMsgpackValues.toColumnJsonNode(v)),
+                writeColumn(v),
+                v.toString());
+    }
+
+    private static String writeColumn(Value v) throws IOException {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(writer)) {
+            JacksonMsgpackValues.writeColumn(v, generator);
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,135 @@
+package org.embulk.output.http_json.jackson;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.embulk.config.TaskReport;
+import org.embulk.util.config.ConfigMapperFactory;
+import org.junit.jupiter.api.Test;
+
+public class TestJacksonResponseCollector {
+
+    private static final ConfigMapperFactory CONFIG_MAPPER_FACTORY =
+            ConfigMapperFactory.builder().addDefaultModules().build();
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testAll() {
+        TaskReport report = collect(JacksonResponseCollector.Retention.ALL, 1, 200, 500, 200);
+        assertEquals(3, responses(report).size());
+        assertFalse(report.has("responses_summary"));
+    }
+
+    @Test
+    public void testNone() {
+        TaskReport report = collect(JacksonResponseCollector.Retention.NONE, 1, 200, 500);
+        assertFalse(report.has("responses"));
+        assertFalse(report.has("responses_summary"));
+    }
+
+    @Test
+    public void testSummary() {
+        TaskReport report =
+                collect(JacksonResponseCollector.Retention.SUMMARY, 1, 200, 500, 503, 200);
+        assertFalse(report.has("responses"));
+        JsonNode summary = summary(report);
+        assertEquals(4, summary.get("request_count").asLong());
+        assertEquals(2, summary.get("status_code_counts").get("200").asLong());
+        assertEquals(1, summary.get("status_code_counts").get("500").asLong());
+        assertEquals(1, summary.get("status_code_counts").get("503").asLong());
+        assertEquals(0, summary.get("latency_millis").get("min").asLong());
+        assertEquals(3, summary.get("latency_millis").get("max").asLong());
+        assertEquals(6, summary.get("latency_millis").get("total").asLong());
+    }
+
+    @Test
+    public void testFirst() {
+        TaskReport report = collect(JacksonResponseCollector.Retention.FIRST, 2, 200, 500, 201);
+        JsonNode responses = responses(report);
+        assertEquals(2, responses.size());
+        assertEquals(0, responses.get(0).get("i").asInt());
+        assertEquals(1, responses.get(1).get("i").asInt());
+    }
+
+    @Test
+    public void testSampled() {
+        int[] statuses = new int[100];
+        Arrays.fill(statuses, 200);
+        TaskReport report = collect(JacksonResponseCollector.Retention.SAMPLED, 5, statuses);
+        JsonNode responses = responses(report);
+        assertEquals(5, responses.size());
+        Set<Integer> indices = new HashSet<>();
+        responses.forEach(response -> indices.add(response.get("i").asInt()));
+        assertEquals(5, indices.size());
+        assertEquals(100, summary(report).get("request_count").asLong());
+    }
+
+    @Test
+    public void testErrors() {
+        TaskReport report =
+                collect(JacksonResponseCollector.Retention.ERRORS, 2, 200, 500, 201, 429, 503);
+        JsonNode responses = responses(report);
+        assertEquals(2, responses.size());
+        assertEquals(500, responses.get(0).get("status_code").asInt());
+        assertEquals(429, responses.get(1).get("status_code").asInt());
+        assertEquals(1, summary(report).get("status_code_counts").get("503").asLong());
+    }
+
+    @Test
+    public void testRetriedAttemptsAreOnlyCounted() {
+        JacksonResponseCollector collector =
+                new JacksonResponseCollector(JacksonResponseCollector.Retention.FIRST, 10);
+        ObjectNode failed = mapper.createObjectNode().put("status_code", 503);
+        ObjectNode succeeded = mapper.createObjectNode().put("status_code", 200);
+        collector.addAttempt(failed, 1);
+        collector.addAttempt(succeeded, 1);
+        collector.addResponse(succeeded);
+        TaskReport report = collector.writeTo(CONFIG_MAPPER_FACTORY.newTaskReport(), "responses");
+        assertEquals(1, responses(report).size());
+        assertEquals(200, responses(report).get(0).get("status_code").asInt());
+        assertEquals(2, summary(report).get("request_count").asLong());
+    }
+
+    @Test
+    public void testRejectedRecordCount() {
+        JacksonResponseCollector collector =
+                new JacksonResponseCollector(JacksonResponseCollector.Retention.SUMMARY, 1);
+        collector.addRejectedRecord();
+        collector.addRejectedRecord();
+        TaskReport report = collector.writeTo(CONFIG_MAPPER_FACTORY.newTaskReport(), "responses");
+        JsonNode summary = summary(report);
+        assertEquals(2, summary.get("rejected_record_count").asLong());
+        assertEquals(0, summary.get("request_count").asLong());
+        assertTrue(summary.get("latency_millis") == null);
+    }
+
+    // NOTE: The i-th response has the status code 'statuses[i]' and the elapsed time 'i % 4'.
+    private static TaskReport collect(
+            JacksonResponseCollector.Retention retention, int maxRetained, int... statuses) {
+        JacksonResponseCollector collector = new JacksonResponseCollector(retention, maxRetained);
+        for (int i = 0; i < statuses.length; i++) {
+            ObjectNode response = mapper.createObjectNode();
+            response.put("i", i);
+            response.put("status_code", statuses[i]);
+            response.put("status_code_class", statuses[i] / 100 * 100);
+            collector.addAttempt(response, i % 4);
+            collector.addResponse(response);
+        }
+        return collector.writeTo(CONFIG_MAPPER_FACTORY.newTaskReport(), "responses");
+    }
+
+    private static JsonNode responses(TaskReport report) {
+        return report.get(JsonNode.class, "responses");
+    }
+
+    private static JsonNode summary(TaskReport report) {
+        return report.get(JsonNode.class, "responses_summary");
+    }
+}
@@ -0,0 +1,67 @@
+package org.embulk.output.http_json.jackson;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+public class TestJacksonSerializedSizeEstimator {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testScalars() throws IOException {
+        assertExact("null");
+        assertExact("true");
+        assertExact("false");
+        assertExact("0");
+        assertExact("-1234567890123");
+        assertExact("5.5");
+        assertExact("\"\"");
+        assertExact("\"abc\"");
+    }
+
+    @Test
+    public void testContainers() throws IOException {
+        assertExact("[]");
+        assertExact("{}");
+        assertExact("[1,2,3]");
+        assertExact("{\"a\":1,\"b\":[true,null,{\"c\":\"d\"}],\"e\":{}}");
+    }
+
+    @Test
+    public void testEscapedStrings() throws IOException {
+        assertExact("\"a\\\"b\\\\c\"");
+        assertExact("\"\\b\\f\\n\\r\\t\"");
+        assertExact("\"\\u0000\\u001f\"");
+        assertExact("{\"new\\nline\":\"tab\\t\"}");
+    }
+
+    @Test
+    public void testMultiByteStrings() throws IOException {
+        assertExact("\"\u00e9\"");
+        assertExact("\"\u3042\u3044\u3046\"");
+        assertExact("\"\ud83d\ude00\"");
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        ObjectNode node = JsonNodeFactory.instance.objectNode();
+        node.put("b", new byte[] {1, 2, 3, 4, 5});
+        assertEquals(
+                mapper.writeValueAsBytes(node).length,
+                JacksonSerializedSizeEstimator.estimate(node));
+    }
+
+    private static void assertExact(String json) throws IOException {
+        JsonNode node = mapper.readTree(json);
+        assertEquals(
+                mapper.writeValueAsBytes(node).length,
+                JacksonSerializedSizeEstimator.estimate(node),
+                json);
+    }
+}
@@ -0,0 +1,94 @@
+package org.embulk.output.http_json.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import java.util.Arrays;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.eclipse.jetty.client.HttpClient;
+import org.glassfish.jersey.client.ClientConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+public class TestJAXRSJettyConnector {
+
+    @RegisterExtension
+    static WireMockExtension wm =
+            WireMockExtension.newInstance()
+                    .options(WireMockConfiguration.wireMockConfig().dynamicPort())
+                    .build();
+
+    private HttpClient httpClient;
+
+    @BeforeEach
+    public void startClient() throws Exception {
+        httpClient = new HttpClient();
+        httpClient.start();
+    }
+
+    @AfterEach
+    public void stopClient() throws Exception {
+        httpClient.stop();
+    }
+
+    @Test
+    public void testBodiesAreSentAndReadWhole() {
+        final byte[] body = new byte[100 * 1024];
+        Arrays.fill(body, (byte) 'a');
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .willReturn(WireMock.aResponse().withStatus(200).withBody(body)));
+
+        final Client client = newClient(1024 * 1024);
+        try {
+            final Response response =
+                    client.target(wm.baseUrl() + "/test")
+                            .request()
+                            .post(Entity.entity(body, MediaType.APPLICATION_OCTET_STREAM));
+            assertEquals(body.length, response.readEntity(byte[].class).length);
+        } finally {
+            client.close();
+        }
+        wm.verify(
+                WireMock.postRequestedFor(WireMock.urlPathEqualTo("/test"))
+                        .withHeader("Content-Length", WireMock.equalTo(String.valueOf(body.length)))
+                        .withRequestBody(WireMock.binaryEqualTo(body)));
+    }
+
+    @Test
+    public void testLargeResponseBodyFails() {
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .willReturn(WireMock.aResponse().withStatus(200).withBody(new byte[2048])));
+
+        final Client client = newClient(1024);
+        try {
+            assertThrows(
+                    ProcessingException.class,
+                    () ->
+                            client.target(wm.baseUrl() + "/test")
+                                    .request()
+                                    .post(Entity.entity("{}", MediaType.APPLICATION_JSON)));
+        } finally {
+            client.close();
+        }
+    }
+
+    private Client newClient(int maxResponseBytes) {
+        final ClientConfig config = new ClientConfig();
+        config.connectorProvider(
+                (client, configuration) ->
+                        new JAXRSJettyConnector(httpClient, 10000, maxResponseBytes));
+        return ClientBuilder.newBuilder().withConfig(config).build();
+    }
+}
@@ -0,0 +1,372 @@
+package org.embulk.output.http_json.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.http.Fault;
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.ws.rs.ProcessingException;
+import org.embulk.output.http_json.HttpJsonOutputPlugin.PluginTask;
+import org.embulk.output.http_json.extension.embulk.PluginTasks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+public class TestJAXRSJsonNodeTaskRequester {
+
+    @RegisterExtension
+    static WireMockExtension wm =
+            WireMockExtension.newInstance()
+                    .options(
+                            WireMockConfiguration.wireMockConfig()
+                                    .dynamicPort()
+                                    .asynchronousResponseEnabled(true))
+                    .build();
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void testListenerReceivesEveryAttempt() throws Exception {
+        stubStatuses(500, 503, 200);
+        RecordingListener listener = new RecordingListener();
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task("initial_retry_interval_millis", 1), 0, listener)) {
+            ObjectNode response = requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 0);
+            assertEquals(200, response.get("status_code").asInt());
+        }
+        assertEquals(Arrays.asList(500, 503, 200), listener.statusCodes);
+        assertEquals(2, listener.retries);
+    }
+
+    @Test
+    public void testListenerReceivesTheFinalFailure() throws Exception {
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .willReturn(WireMock.aResponse().withStatus(500).withBody("not json")));
+        RecordingListener listener = new RecordingListener();
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task("initial_retry_interval_millis", 1, "maximum_retries", 1),
+                        0,
+                        listener)) {
+            assertThrows(
+                    RuntimeException.class,
+                    () -> requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 0));
+        }
+        assertEquals(Arrays.asList(500, 500), listener.statusCodes);
+        assertEquals("not json", listener.responses.get(1).get("response_body").asText());
+    }
+
+    // NOTE: The attempts and the waits are sequential, so the elapsed times of the attempts add up
+    //       to the whole time minus the waits.
+    @Test
+    public void testElapsedTimeExcludesTheBackoff() throws Exception {
+        stubStatuses(503, 503, 200);
+        RecordingListener listener = new RecordingListener();
+        long startNanos = System.nanoTime();
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task("initial_retry_interval_millis", 1000, "retry_jitter", false),
+                        0,
+                        listener)) {
+            requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 0);
+        }
+        assertEquals(3, listener.elapsedMillis.size());
+        assertElapsedTimeExcludes(3000, startNanos, listener);
+    }
+
+    @Test
+    public void testElapsedTimeExcludesTheRateLimit() throws Exception {
+        stubStatuses(200, 200, 200);
+        RecordingListener listener = new RecordingListener();
+        long startNanos = System.nanoTime();
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task("requests_per_second", 1.0, "host", "127.0.0.1"), 0, listener)) {
+            for (int i = 0; i < 3; i++) {
+                requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), i);
+            }
+        }
+        assertEquals(3, listener.elapsedMillis.size());
+        assertElapsedTimeExcludes(1900, startNanos, listener);
+    }
+
+    private static void assertElapsedTimeExcludes(
+            long waitMillis, long startNanos, RecordingListener listener) {
+        long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        long attemptMillis = listener.elapsedMillis.stream().mapToLong(Long::longValue).sum();
+        assertTrue(
+                attemptMillis <= totalMillis - waitMillis,
+                "attempts " + listener.elapsedMillis + " in " + totalMillis);
+    }
+
+    @Test
+    public void testConnectionErrorIsRetried() throws Exception {
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .inScenario("fault")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willSetStateTo("recovered")
+                        .willReturn(
+                                WireMock.aResponse().withFault(Fault.CONNECTION_RESET_BY_PEER)));
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .inScenario("fault")
+                        .whenScenarioStateIs("recovered")
+                        .willReturn(WireMock.aResponse().withStatus(200).withBody("{}")));
+        RecordingListener listener = new RecordingListener();
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task("initial_retry_interval_millis", 1), 0, listener)) {
+            requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 0);
+        }
+        assertEquals(Arrays.asList(200), listener.statusCodes);
+        assertEquals(1, listener.retries);
+    }
+
+    @Test
+    public void testTimeoutIsRetried() throws Exception {
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .willReturn(WireMock.aResponse().withStatus(200).withFixedDelay(500)));
+        RecordingListener listener = new RecordingListener();
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task(
+                                "read_timeout_millis",
+                                100,
+                                "initial_retry_interval_millis",
+                                1,
+                                "maximum_retries",
+                                2),
+                        0,
+                        listener)) {
+            assertThrows(
+                    ProcessingException.class,
+                    () -> requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 0));
+        }
+        assertEquals(2, listener.retries);
+        assertEquals(0, listener.statusCodes.size());
+    }
+
+    @Test
+    public void testWaitsForRetryAfterBeyondTheMaximumInterval() throws Exception {
+        stubRetryAfter("1");
+        RecordingListener listener = new RecordingListener();
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task(
+                                "initial_retry_interval_millis",
+                                1,
+                                "maximum_retry_interval_millis",
+                                10,
+                                "maximum_retry_after_millis",
+                                5000),
+                        0,
+                        listener)) {
+            long startNanos = System.nanoTime();
+            requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 0);
+            assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(1000));
+        }
+        assertEquals(Arrays.asList(429, 200), listener.statusCodes);
+    }
+
+    @Test
+    public void testFailsWhenRetryAfterExceedsTheMaximum() throws Exception {
+        stubRetryAfter("60");
+        RecordingListener listener = new RecordingListener();
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task("maximum_retry_after_millis", 1000), 0, listener)) {
+            long startNanos = System.nanoTime();
+            assertThrows(
+                    RuntimeException.class,
+                    () -> requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 0));
+            assertTrue(System.nanoTime() - startNanos < TimeUnit.MILLISECONDS.toNanos(1000));
+        }
+        assertEquals(Arrays.asList(429), listener.statusCodes);
+    }
+
+    @Test
+    public void testAsyncRequestsHoldNoThreads() throws Exception {
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(200)
+                                        .withBody("{}")
+                                        .withFixedDelay(1000)));
+        RecordingListener listener = new RecordingListener();
+        List<CompletableFuture<ObjectNode>> responses = new ArrayList<>();
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task("request_engine", "async", "max_connections", 100), 0, listener)) {
+            for (int i = 0; i < 100; i++) {
+                responses.add(requester.requestWithRetryAsync(mapper.readTree("[{\"i\":1}]"), i));
+            }
+            Thread.sleep(500);
+            assertEquals(0, countThreadsInRequests());
+            CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0]))
+                    .get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(100, listener.statusCodes.size());
+    }
+
+    @Test
+    public void testRequestBodyIsSentWithContentLength() throws Exception {
+        stubStatuses(200);
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(task(), 0, new RecordingListener())) {
+            requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 0);
+        }
+        wm.verify(
+                WireMock.postRequestedFor(WireMock.urlPathEqualTo("/test"))
+                        .withHeader("Content-Length", WireMock.equalTo("9"))
+                        .withoutHeader("Transfer-Encoding")
+                        .withRequestBody(WireMock.equalTo("[{\"i\":1}]")));
+    }
+
+    // NOTE: The threads blocked in a request, either in the client or on the socket.
+    @Test
+    public void testIdempotencyKeyIsStableAcrossRetries() throws Exception {
+        stubStatuses(503, 503, 200);
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task(
+                                "initial_retry_interval_millis",
+                                1,
+                                "idempotency_key_header",
+                                "Idempotency-Key"),
+                        2,
+                        new RecordingListener())) {
+            requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 3);
+        }
+        final List<LoggedRequest> requests =
+                wm.findAll(WireMock.postRequestedFor(WireMock.anyUrl()));
+        assertEquals(3, requests.size());
+        final String expected = "2-3-" + sha256(requests.get(0).getBody());
+        for (LoggedRequest request : requests) {
+            assertEquals(expected, request.getHeader("Idempotency-Key"));
+        }
+    }
+
+    @Test
+    public void testIdempotencyKeyIsStableAcrossRuns() throws Exception {
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .willReturn(WireMock.aResponse().withStatus(200).withBody("{}")));
+        final PluginTask task = task("idempotency_key_header", "Idempotency-Key");
+        for (int run = 0; run < 2; run++) {
+            try (JAXRSJsonNodeTaskRequester requester =
+                    JAXRSJsonNodeTaskRequester.of(task, 0, new RecordingListener())) {
+                requester.requestWithRetry(mapper.readTree("[{\"i\":1},{\"i\":2}]"), 0);
+                // NOTE: The first half of a split request has the same offset as the request.
+                requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 0);
+                requester.requestWithRetry(mapper.readTree("[{\"i\":2}]"), 1);
+            }
+        }
+        final List<String> keys =
+                wm.findAll(WireMock.postRequestedFor(WireMock.anyUrl())).stream()
+                        .map(request -> request.getHeader("Idempotency-Key"))
+                        .collect(Collectors.toList());
+        assertEquals(6, keys.size());
+        assertEquals(keys.subList(0, 3), keys.subList(3, 6));
+        assertEquals(3, new HashSet<>(keys).size());
+        assertTrue(keys.get(1).startsWith("0-0-"));
+        assertTrue(keys.get(2).startsWith("0-1-"));
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static long countThreadsInRequests() {
+        return Thread.getAllStackTraces().values().stream()
+                .filter(
+                        stack ->
+                                Arrays.stream(stack)
+                                        .anyMatch(
+                                                e ->
+                                                        e.getClassName()
+                                                                        .startsWith(
+                                                                                "org.glassfish.jersey.client")
+                                                                || e.getMethodName()
+                                                                        .startsWith("socketRead")))
+                .count();
+    }
+
+    private static PluginTask task(Object... options) {
+        return PluginTasks.of(wm.getPort(), options);
+    }
+
+    private static void stubStatuses(int... statuses) {
+        for (int i = 0; i < statuses.length; i++) {
+            wm.stubFor(
+                    WireMock.post(WireMock.urlPathEqualTo("/test"))
+                            .inScenario("statuses")
+                            .whenScenarioStateIs(i == 0 ? Scenario.STARTED : "attempt" + i)
+                            .willSetStateTo("attempt" + (i + 1))
+                            .willReturn(
+                                    WireMock.aResponse()
+                                            .withStatus(statuses[i])
+                                            .withHeader("Content-Type", "application/json")
+                                            .withBody("{\"attempt\":" + i + "}")));
+        }
+    }
+
+    private static void stubRetryAfter(String retryAfter) {
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .inScenario("retry-after")
+                        .whenScenarioStateIs(Scenario.STARTED)
+                        .willSetStateTo("retried")
+                        .willReturn(
+                                WireMock.aResponse()
+                                        .withStatus(429)
+                                        .withHeader("Retry-After", retryAfter)));
+        wm.stubFor(
+                WireMock.post(WireMock.urlPathEqualTo("/test"))
+                        .inScenario("retry-after")
+                        .whenScenarioStateIs("retried")
+                        .willReturn(WireMock.aResponse().withStatus(200).withBody("{}")));
+    }
+
+    static class RecordingListener implements JAXRSRequestListener {
+        final List<ObjectNode> responses = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> statusCodes = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> elapsedMillis = Collections.synchronizedList(new ArrayList<>());
+        volatile int retries = 0;
+
+        @Override
+        public void onResponse(ObjectNode response, long elapsedMillis) {
+            responses.add(response);
+            this.elapsedMillis.add(elapsedMillis);
+            statusCodes.add(response.get("status_code").asInt());
+        }
+
+        @Override
+        public synchronized void onRetry() {
+            retries++;
+        }
+    }
+}
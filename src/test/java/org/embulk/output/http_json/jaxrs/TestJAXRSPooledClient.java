@@ -0,0 +1,198 @@
+package org.embulk.output.http_json.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.core.Response;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.embulk.output.http_json.HttpJsonOutputPlugin.PluginTask;
+import org.embulk.output.http_json.extension.embulk.PluginTasks;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TestJAXRSPooledClient {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final List<String> protocols = Collections.synchronizedList(new ArrayList<>());
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<>());
+    private Server server;
+    private int port;
+
+    // NOTE: A server speaking both HTTP/1.1 and h2c, which records the protocol and the client port
+    //       of each request.
+    @BeforeEach
+    public void startServer() throws Exception {
+        server = new Server();
+        final HttpConfiguration config = new HttpConfiguration();
+        final ServerConnector connector =
+                new ServerConnector(
+                        server,
+                        new HttpConnectionFactory(config),
+                        new HTTP2CServerConnectionFactory(config));
+        server.addConnector(connector);
+        server.setHandler(
+                new AbstractHandler() {
+                    @Override
+                    public void handle(
+                            String target,
+                            Request baseRequest,
+                            HttpServletRequest request,
+                            HttpServletResponse response)
+                            throws IOException {
+                        protocols.add(request.getProtocol());
+                        clientPorts.add(request.getRemotePort());
+                        sleep(100);
+                        response.setStatus(200);
+                        response.setContentType("application/json");
+                        response.getWriter().write("{\"ok\":true}");
+                        baseRequest.setHandled(true);
+                    }
+                });
+        server.start();
+        port = connector.getLocalPort();
+    }
+
+    @AfterEach
+    public void stopServer() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void testHttp1() throws Exception {
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(task(), 0, new NullListener())) {
+            requester.requestWithRetry(mapper.readTree("[{\"i\":1}]"), 0);
+        }
+        assertEquals(Collections.singletonList("HTTP/1.1"), protocols);
+    }
+
+    @Test
+    public void testHttp2MultiplexesTheRequests() throws Exception {
+        final List<CompletableFuture<ObjectNode>> responses = new ArrayList<>();
+        try (JAXRSJsonNodeTaskRequester requester =
+                JAXRSJsonNodeTaskRequester.of(
+                        task("http_version", "2", "request_engine", "async", "max_connections", 1),
+                        0,
+                        new NullListener())) {
+            // NOTE: The first request opens the connection. The others would take 2 seconds one by
+            //       one on it.
+            requester.requestWithRetryAsync(mapper.readTree("[{\"i\":0}]"), 0).get();
+            final long startNanos = System.nanoTime();
+            for (int i = 1; i <= 20; i++) {
+                responses.add(requester.requestWithRetryAsync(mapper.readTree("[{\"i\":1}]"), i));
+            }
+            for (CompletableFuture<ObjectNode> response : responses) {
+                assertEquals(200, response.get(10, TimeUnit.SECONDS).get("status_code").asInt());
+            }
+            assertTrue(System.nanoTime() - startNanos < TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(21, protocols.size());
+        protocols.forEach(protocol -> assertEquals("HTTP/2.0", protocol));
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testSharedClientIsReusedByTheNextTask() throws Exception {
+        final PluginTask task = task("share_connection_pool", true);
+        final JAXRSPooledClient first = JAXRSPooledClient.of(task);
+        assertEquals(200, request(first));
+        first.close();
+        final JAXRSPooledClient second = JAXRSPooledClient.of(task);
+        try {
+            assertSame(first, second);
+            assertEquals(200, request(second));
+        } finally {
+            second.close();
+        }
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testSharedClientIsClosedWhenIdle() throws Exception {
+        final PluginTask task =
+                task("share_connection_pool", true, "idle_connection_timeout_millis", 100);
+        final JAXRSPooledClient first = JAXRSPooledClient.of(task);
+        first.close();
+        sleep(500);
+        final JAXRSPooledClient second = JAXRSPooledClient.of(task);
+        try {
+            assertNotSame(first, second);
+            assertEquals(200, request(second));
+        } finally {
+            second.close();
+        }
+    }
+
+    @Test
+    public void testSharedOnlyWithTheSameSettings() {
+        final JAXRSPooledClient first = JAXRSPooledClient.of(task("share_connection_pool", true));
+        final JAXRSPooledClient second =
+                JAXRSPooledClient.of(task("share_connection_pool", true, "http_version", "2"));
+        final JAXRSPooledClient third = JAXRSPooledClient.of(task());
+        try {
+            assertNotSame(first, second);
+            assertNotSame(first, third);
+        } finally {
+            first.close();
+            second.close();
+            third.close();
+        }
+    }
+
+    private int request(JAXRSPooledClient pooledClient) {
+        final Response response =
+                pooledClient
+                        .getClient()
+                        .target("http://localhost:" + port + "/test")
+                        .request()
+                        .get();
+        try {
+            return response.getStatus();
+        } finally {
+            response.close();
+        }
+    }
+
+    private PluginTask task(Object... options) {
+        return PluginTasks.of(port, options);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class NullListener implements JAXRSRequestListener {
+        @Override
+        public void onResponse(ObjectNode response, long elapsedMillis) {}
+
+        @Override
+        public void onRetry() {}
+    }
+}
@@ -0,0 +1,95 @@
+package org.embulk.output.http_json.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import org.junit.jupiter.api.Test;
+
+public class TestJAXRSRequestCompression {
+
+    private static final byte[] JSON = repeat("[{\"s\":\"a\",\"i\":5}]", 100);
+
+    @Test
+    public void testOf() {
+        assertEquals(JAXRSRequestCompression.NONE, JAXRSRequestCompression.of("none"));
+        assertEquals(JAXRSRequestCompression.GZIP, JAXRSRequestCompression.of("gzip"));
+        assertEquals(JAXRSRequestCompression.DEFLATE, JAXRSRequestCompression.of("DEFLATE"));
+        assertThrows(IllegalArgumentException.class, () -> JAXRSRequestCompression.of("br"));
+    }
+
+    @Test
+    public void testContentEncoding() {
+        assertEquals(Optional.empty(), JAXRSRequestCompression.NONE.getContentEncoding());
+        assertEquals(Optional.of("gzip"), JAXRSRequestCompression.GZIP.getContentEncoding());
+        assertEquals(Optional.of("deflate"), JAXRSRequestCompression.DEFLATE.getContentEncoding());
+    }
+
+    @Test
+    public void testNone() throws IOException {
+        assertArrayEquals(JSON, compress(JAXRSRequestCompression.NONE, 6));
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        byte[] compressed = compress(JAXRSRequestCompression.GZIP, 6);
+        assertTrue(compressed.length < JSON.length);
+        assertArrayEquals(JSON, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testDeflate() throws IOException {
+        byte[] compressed = compress(JAXRSRequestCompression.DEFLATE, 6);
+        assertTrue(compressed.length < JSON.length);
+        assertArrayEquals(
+                JSON, readAll(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+    }
+
+    @Test
+    public void testLevel() throws IOException {
+        byte[] stored = compress(JAXRSRequestCompression.GZIP, Deflater.NO_COMPRESSION);
+        byte[] best = compress(JAXRSRequestCompression.GZIP, Deflater.BEST_COMPRESSION);
+        assertFalse(stored.length < JSON.length);
+        assertTrue(best.length < stored.length);
+        assertArrayEquals(JSON, readAll(new GZIPInputStream(new ByteArrayInputStream(stored))));
+    }
+
+    private static byte[] compress(JAXRSRequestCompression compression, int level)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = compression.compress(bytes, level)) {
+            out.write(JSON);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] repeat(String s, int times) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            builder.append(s);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,165 @@
+package org.embulk.output.http_json.jaxrs;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.Optional;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import org.embulk.output.http_json.extension.embulk.PluginTasks;
+import org.junit.jupiter.api.Test;
+
+public class TestJAXRSRetryScheduler {
+
+    private static final Instant NOW = Instant.ofEpochSecond(1_700_000_000L);
+
+    @Test
+    public void testParseRetryAfterSeconds() {
+        assertEquals(Optional.of(120_000L), JAXRSRetryScheduler.parseRetryAfter("120", NOW));
+        assertEquals(Optional.of(0L), JAXRSRetryScheduler.parseRetryAfter("0", NOW));
+        assertEquals(Optional.of(0L), JAXRSRetryScheduler.parseRetryAfter("-5", NOW));
+    }
+
+    @Test
+    public void testParseRetryAfterEpochSeconds() {
+        assertEquals(Optional.of(30_000L), JAXRSRetryScheduler.parseRetryAfter("1700000030", NOW));
+        assertEquals(Optional.of(0L), JAXRSRetryScheduler.parseRetryAfter("1699999990", NOW));
+    }
+
+    @Test
+    public void testParseRetryAfterHttpDate() {
+        // NOTE: 1700000000 is 2023-11-14T22:13:20Z.
+        assertEquals(
+                Optional.of(30_000L),
+                JAXRSRetryScheduler.parseRetryAfter("Tue, 14 Nov 2023 22:13:50 GMT", NOW));
+        assertEquals(
+                Optional.of(0L),
+                JAXRSRetryScheduler.parseRetryAfter("Tue, 14 Nov 2023 22:00:00 GMT", NOW));
+    }
+
+    @Test
+    public void testParseRetryAfterInvalid() {
+        assertEquals(Optional.empty(), JAXRSRetryScheduler.parseRetryAfter("soon", NOW));
+        assertEquals(Optional.empty(), JAXRSRetryScheduler.parseRetryAfter("", NOW));
+    }
+
+    @Test
+    public void testExponentialBackoff() throws Exception {
+        JAXRSRetryScheduler scheduler =
+                JAXRSRetryScheduler.of(
+                        PluginTasks.of(
+                                80,
+                                "initial_retry_interval_millis",
+                                100,
+                                "maximum_retry_interval_millis",
+                                1000));
+        long[] expected = {100, 200, 400, 800, 1000, 1000};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], scheduler.getBackoffMillis(i + 1));
+        }
+    }
+
+    @Test
+    public void testJitterKeepsHalfOfTheBackoff() throws Exception {
+        JAXRSRetryScheduler scheduler =
+                JAXRSRetryScheduler.of(
+                        PluginTasks.of(
+                                80, "initial_retry_interval_millis", 100, "retry_jitter", true));
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 1000; i++) {
+            long backoffMillis = scheduler.getBackoffMillis(3);
+            min = Math.min(min, backoffMillis);
+            max = Math.max(max, backoffMillis);
+        }
+        assertTrue(min >= 200, "min " + min);
+        assertTrue(max <= 400, "max " + max);
+        assertTrue(max > min);
+    }
+
+    @Test
+    public void testRetryAfterIsNotCappedByTheBackoff() throws Exception {
+        JAXRSRetryScheduler scheduler =
+                JAXRSRetryScheduler.of(
+                        PluginTasks.of(
+                                80,
+                                "initial_retry_interval_millis",
+                                100,
+                                "maximum_retry_interval_millis",
+                                1000,
+                                "maximum_retry_after_millis",
+                                300_000));
+        assertEquals(120_000L, scheduler.getIntervalMillis(1, retryAfter("120")));
+        assertEquals(100L, scheduler.getIntervalMillis(1, retryAfter("0")));
+        assertEquals(100L, scheduler.getIntervalMillis(1, retryAfter("soon")));
+    }
+
+    @Test
+    public void testRetryAfterIsLimitedByTheMaximumRetryIntervalByDefault() throws Exception {
+        JAXRSRetryScheduler scheduler =
+                JAXRSRetryScheduler.of(
+                        PluginTasks.of(
+                                80,
+                                "initial_retry_interval_millis",
+                                100,
+                                "maximum_retry_interval_millis",
+                                1000));
+        assertEquals(1_000L, scheduler.getIntervalMillis(1, retryAfter("1")));
+        assertEquals(-1L, scheduler.getIntervalMillis(1, retryAfter("2")));
+    }
+
+    @Test
+    public void testRateLimitResetHeaders() throws Exception {
+        JAXRSRetryScheduler scheduler =
+                JAXRSRetryScheduler.of(PluginTasks.of(80, "initial_retry_interval_millis", 100));
+        assertEquals(
+                5_000L,
+                scheduler.getIntervalMillis(
+                        1,
+                        new WebApplicationException(
+                                Response.status(429).header("RateLimit-Reset", "5").build())));
+        assertEquals(
+                7_000L,
+                scheduler.getIntervalMillis(
+                        1,
+                        new WebApplicationException(
+                                Response.status(429)
+                                        .header("Retry-After", "7")
+                                        .header("X-RateLimit-Reset", "5")
+                                        .build())));
+    }
+
+    @Test
+    public void testRetryAfterIsIgnored() throws Exception {
+        JAXRSRetryScheduler scheduler =
+                JAXRSRetryScheduler.of(
+                        PluginTasks.of(
+                                80,
+                                "initial_retry_interval_millis",
+                                100,
+                                "respect_retry_after",
+                                false));
+        assertEquals(100L, scheduler.getIntervalMillis(1, retryAfter("120")));
+    }
+
+    @Test
+    public void testRetryAfterLongerThanTheMaximumFails() throws Exception {
+        JAXRSRetryScheduler scheduler =
+                JAXRSRetryScheduler.of(
+                        PluginTasks.of(
+                                80,
+                                "initial_retry_interval_millis",
+                                100,
+                                "maximum_retry_after_millis",
+                                60_000));
+        assertEquals(60_000L, scheduler.getIntervalMillis(1, retryAfter("60")));
+        assertEquals(-1L, scheduler.getIntervalMillis(1, retryAfter("61")));
+    }
+
+    private static Exception retryAfter(String value) {
+        return new RuntimeException(
+                new WebApplicationException(
+                        Response.status(429).header("Retry-After", value).build()));
+    }
+}
@@ -0,0 +1,55 @@
+package org.embulk.output.http_json.jq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class TestJQInputFields {
+
+    @Test
+    public void testFields() {
+        assertEquals(
+                Optional.of(fields("status_code_class")),
+                JQInputFields.of(".status_code_class == 200"));
+        assertEquals(
+                Optional.of(fields("status_code", "response_body", "ok")),
+                JQInputFields.of(
+                        "(.status_code == 200 or .status_code == 201) and .response_body.ok"));
+        assertEquals(
+                Optional.of(fields("status_code", "retry")),
+                JQInputFields.of("if .status_code >= 500 then true else .[\"retry\"] end"));
+        assertEquals(Optional.of(fields()), JQInputFields.of("true and (false | not)"));
+    }
+
+    @Test
+    public void testWholeInput() {
+        assertFalse(JQInputFields.of(".").isPresent());
+        assertFalse(JQInputFields.of("..").isPresent());
+        assertFalse(JQInputFields.of(".[] | .a").isPresent());
+        assertFalse(JQInputFields.of("{status_code}").isPresent());
+        assertFalse(JQInputFields.of("@json").isPresent());
+        assertFalse(JQInputFields.of("length > 0").isPresent());
+        assertFalse(JQInputFields.of("has(\"status_code\")").isPresent());
+        assertFalse(JQInputFields.of("\"\\(.status_code)\" == \"200\"").isPresent());
+    }
+
+    @Test
+    public void testReadsOnly() {
+        final Set<String> statusFields = fields("status_code", "status_code_class");
+        assertTrue(JQInputFields.readsOnly(".status_code_class == 200", statusFields));
+        assertFalse(
+                JQInputFields.readsOnly(".status_code == 200 and .response_body.ok", statusFields));
+        assertFalse(JQInputFields.readsOnly(".", statusFields));
+    }
+
+    private static Set<String> fields(String... names) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(names)));
+    }
+}
@@ -0,0 +1,89 @@
+package org.embulk.output.http_json.jq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.IntPredicate;
+import org.junit.jupiter.api.Test;
+
+public class TestJQStatusCodePredicate {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JQ jq = new JQ();
+    private static final int[] STATUS_CODES = {100, 200, 201, 204, 301, 404, 429, 500, 503};
+
+    @Test
+    public void testAgreesWithJq() throws Exception {
+        final List<String> filters =
+                Arrays.asList(
+                        ".status_code_class == 200",
+                        ".status_code == 200",
+                        ".status_code != 404",
+                        ".status_code < 300",
+                        ".status_code <= 201",
+                        ".status_code > 204",
+                        ".status_code >= 500",
+                        "200 == .status_code",
+                        ".status_code_class == 200 or .status_code == 429",
+                        ".status_code_class == 500 and .status_code != 501",
+                        ".status_code >= 200 and .status_code < 300 or .status_code == 404",
+                        "(.status_code == 200 or .status_code == 201) and .status_code_class == 200",
+                        ".status_code_class == 200 | not",
+                        ".status_code_class == 200 | not | not",
+                        "(.status_code == 500 | not) and .status_code_class != 100",
+                        ".status_code | not",
+                        ".status_code and true",
+                        "(.status_code >= 500) == true",
+                        "(.status_code >= 500) != (.status_code == 503)",
+                        ".status_code == 200.0",
+                        ".status_code < 2.5e2",
+                        "true",
+                        "false or .status_code == 301",
+                        "# comment\n.status_code == 204");
+        for (String filter : filters) {
+            final Optional<IntPredicate> predicate = JQStatusCodePredicate.compile(filter);
+            assertTrue(predicate.isPresent(), filter);
+            for (int statusCode : STATUS_CODES) {
+                assertEquals(
+                        jq.jqBoolean(filter, response(statusCode)),
+                        predicate.get().test(statusCode),
+                        filter + " for " + statusCode);
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedFilters() {
+        final List<String> filters =
+                Arrays.asList(
+                        ".status_code",
+                        "200",
+                        ".status_code + 1 == 201",
+                        ".response_body.ok",
+                        ".status_code == 200 and .response_body.ok",
+                        "true < 5",
+                        ".status_code == true",
+                        "1 < 2 < 3",
+                        ".status_code == 200,",
+                        "(.status_code == 200",
+                        ".status_code | . == 200",
+                        "not",
+                        "");
+        for (String filter : filters) {
+            assertFalse(JQStatusCodePredicate.compile(filter).isPresent(), filter);
+        }
+    }
+
+    private static ObjectNode response(int statusCode) {
+        final ObjectNode response = mapper.createObjectNode();
+        response.put("status_code", statusCode);
+        response.put("status_code_class", (statusCode / 100) * 100);
+        return response;
+    }
+}
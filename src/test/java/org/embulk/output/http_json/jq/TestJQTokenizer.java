@@ -0,0 +1,107 @@
+package org.embulk.output.http_json.jq;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class TestJQTokenizer {
+
+    @Test
+    public void testFieldsAndOperators() {
+        assertTokens(
+                ".status_code == 200 and .response_body.ok",
+                "FIELD:status_code",
+                "OPERATOR:==",
+                "NUMBER:200",
+                "IDENTIFIER:and",
+                "FIELD:response_body",
+                "FIELD:ok");
+    }
+
+    @Test
+    public void testQuotedFields() {
+        assertTokens(
+                ".\"foo bar\" | .[\"baz\"] | . [ \"qux\" ]",
+                "FIELD:foo bar",
+                "OPERATOR:|",
+                "FIELD:baz",
+                "OPERATOR:|",
+                "FIELD:qux");
+    }
+
+    @Test
+    public void testDotAndRecurse() {
+        assertTokens(
+                ".[0] | .. | .",
+                "DOT:.",
+                "OPERATOR:[",
+                "NUMBER:0",
+                "OPERATOR:]",
+                "OPERATOR:|",
+                "RECURSE:..",
+                "OPERATOR:|",
+                "DOT:.");
+    }
+
+    @Test
+    public void testLongestOperatorFirst() {
+        assertTokens(
+                ".a ?// .b //= 1 |= 2 <= 3",
+                "FIELD:a",
+                "OPERATOR:?//",
+                "FIELD:b",
+                "OPERATOR://=",
+                "NUMBER:1",
+                "OPERATOR:|=",
+                "NUMBER:2",
+                "OPERATOR:<=",
+                "NUMBER:3");
+    }
+
+    @Test
+    public void testLiterals() {
+        assertTokens(
+                "\"a\\\"b\\u0041\\n\" 1.5e3 2E-1 10",
+                "STRING:a\"bA\n",
+                "NUMBER:1.5e3",
+                "NUMBER:2E-1",
+                "NUMBER:10");
+    }
+
+    @Test
+    public void testVariablesAndFormats() {
+        assertTokens(
+                "$__loc__ | @base64 | length",
+                "VARIABLE:__loc__",
+                "OPERATOR:|",
+                "FORMAT:base64",
+                "OPERATOR:|",
+                "IDENTIFIER:length");
+    }
+
+    @Test
+    public void testComments() {
+        assertTokens(".a # comment | .b\n| .c", "FIELD:a", "OPERATOR:|", "FIELD:c");
+    }
+
+    @Test
+    public void testUnknownSyntax() {
+        assertFalse(JQTokenizer.tokenize("\"\\(.a)\"").isPresent());
+        assertFalse(JQTokenizer.tokenize("foo::bar").isPresent());
+        assertFalse(JQTokenizer.tokenize("\"unterminated").isPresent());
+        assertFalse(JQTokenizer.tokenize(".a ~ .b").isPresent());
+        assertFalse(JQTokenizer.tokenize("$").isPresent());
+    }
+
+    private static void assertTokens(String filter, String... expected) {
+        final List<String> tokens =
+                JQTokenizer.tokenize(filter).get().stream()
+                        .map(token -> token.getType() + ":" + token.getText())
+                        .collect(Collectors.toList());
+        assertEquals(Arrays.asList(expected), tokens, filter);
+    }
+}
@@ -0,0 +1,48 @@
+package org.embulk.output.http_json.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class TestAdaptiveBufferSize {
+
+    @Test
+    public void testIncreasesAdditively() {
+        final AdaptiveBufferSize size = new AdaptiveBufferSize(100, 1, 125, 1000);
+        size.onResponse(1000);
+        assertEquals(110, size.get());
+        size.onResponse(10);
+        assertEquals(120, size.get());
+        size.onResponse(10);
+        assertEquals(125, size.get());
+    }
+
+    @Test
+    public void testDecreasesMultiplicatively() {
+        final AdaptiveBufferSize size = new AdaptiveBufferSize(100, 30, 1000, 1000);
+        size.onResponse(1001);
+        assertEquals(50, size.get());
+        size.onRetry();
+        assertEquals(30, size.get());
+        size.onRetry();
+        assertEquals(30, size.get());
+        size.onResponse(0);
+        assertEquals(40, size.get());
+    }
+
+    @Test
+    public void testIncrementIsAtLeastOne() {
+        final AdaptiveBufferSize size = new AdaptiveBufferSize(5, 1, 10, 1000);
+        size.onResponse(0);
+        assertEquals(6, size.get());
+    }
+
+    @Test
+    public void testFixed() {
+        final AdaptiveBufferSize size = AdaptiveBufferSize.fixed(100);
+        size.onResponse(0);
+        size.onResponse(Long.MAX_VALUE - 1);
+        size.onRetry();
+        assertEquals(100, size.get());
+    }
+}
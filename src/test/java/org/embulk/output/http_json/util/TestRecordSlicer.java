@@ -0,0 +1,94 @@
+package org.embulk.output.http_json.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class TestRecordSlicer {
+
+    @Test
+    public void testMaxRecords() {
+        List<List<String>> slices = new ArrayList<>();
+        RecordSlicer<String> slicer = new RecordSlicer<>(2, slices::add);
+        for (String record : Arrays.asList("a", "b", "c", "d", "e")) {
+            slicer.add(record);
+        }
+        assertEquals(2, slices.size());
+        slicer.flush();
+        slicer.flush();
+        assertEquals(
+                Arrays.asList(
+                        Arrays.asList("a", "b"),
+                        Arrays.asList("c", "d"),
+                        Collections.singletonList("e")),
+                slices);
+    }
+
+    @Test
+    public void testMaxBytesCountsTheArraySeparators() {
+        List<List<String>> slices = new ArrayList<>();
+        // NOTE: ["aaa","bbb"] is 13 bytes, and each record is 5 bytes.
+        RecordSlicer<String> slicer =
+                new RecordSlicer<>(() -> 100, 13, r -> r.length() + 2, slices::add);
+        for (String record : Arrays.asList("aaa", "bbb", "ccc", "ddd", "eee")) {
+            slicer.add(record);
+        }
+        slicer.flush();
+        assertEquals(
+                Arrays.asList(
+                        Arrays.asList("aaa", "bbb"),
+                        Arrays.asList("ccc", "ddd"),
+                        Collections.singletonList("eee")),
+                slices);
+    }
+
+    @Test
+    public void testMaxBytesExcludesARecordThatDoesNotFit() {
+        List<List<String>> slices = new ArrayList<>();
+        RecordSlicer<String> slicer =
+                new RecordSlicer<>(() -> 100, 12, r -> r.length() + 2, slices::add);
+        for (String record : Arrays.asList("aaa", "bbb")) {
+            slicer.add(record);
+        }
+        slicer.flush();
+        assertEquals(
+                Arrays.asList(Collections.singletonList("aaa"), Collections.singletonList("bbb")),
+                slices);
+    }
+
+    @Test
+    public void testLargeRecordIsSentAlone() {
+        List<List<String>> slices = new ArrayList<>();
+        RecordSlicer<String> slicer =
+                new RecordSlicer<>(() -> 100, 10, r -> r.length() + 2, slices::add);
+        for (String record : Arrays.asList("a", "large record", "b")) {
+            slicer.add(record);
+        }
+        slicer.flush();
+        assertEquals(
+                Arrays.asList(
+                        Collections.singletonList("a"),
+                        Collections.singletonList("large record"),
+                        Collections.singletonList("b")),
+                slices);
+    }
+
+    @Test
+    public void testMaxRecordsIsReadForEachRecord() {
+        List<List<Integer>> slices = new ArrayList<>();
+        AtomicInteger maxRecords = new AtomicInteger(1);
+        RecordSlicer<Integer> slicer =
+                new RecordSlicer<>(maxRecords::get, Long.MAX_VALUE, r -> 0L, slices::add);
+        slicer.add(1);
+        maxRecords.set(3);
+        slicer.add(2);
+        slicer.add(3);
+        slicer.add(4);
+        assertEquals(Arrays.asList(Collections.singletonList(1), Arrays.asList(2, 3, 4)), slices);
+    }
+}
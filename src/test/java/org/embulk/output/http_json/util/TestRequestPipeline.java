@@ -0,0 +1,129 @@
+package org.embulk.output.http_json.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class TestRequestPipeline {
+
+    @Test
+    public void testResultsAreConsumedInSubmissionOrder() {
+        final List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        try (RequestPipeline<Integer, Integer> pipeline =
+                new RequestPipeline<>(
+                        4,
+                        i -> {
+                            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            sleep(ThreadLocalRandom.current().nextInt(10));
+                            inFlight.decrementAndGet();
+                            return i;
+                        },
+                        (i, elapsedMillis) -> consumed.add(i),
+                        () -> {})) {
+            for (int i = 0; i < 100; i++) {
+                pipeline.submit(i);
+            }
+            pipeline.finish();
+        }
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, consumed);
+        assertTrue(maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void testSubmitWaitsForTheHeadToBeConsumed() throws Exception {
+        final List<CompletableFuture<Integer>> requests =
+                Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> consumed = Collections.synchronizedList(new ArrayList<>());
+        try (RequestPipeline<Integer, Integer> pipeline =
+                RequestPipeline.ofAsync(
+                        2,
+                        i -> {
+                            final CompletableFuture<Integer> request = new CompletableFuture<>();
+                            requests.add(request);
+                            return request;
+                        },
+                        (i, elapsedMillis) -> consumed.add(i),
+                        () -> {})) {
+            pipeline.submit(0);
+            pipeline.submit(1);
+            requests.get(1).complete(1);
+
+            final CompletableFuture<Void> third =
+                    CompletableFuture.runAsync(() -> pipeline.submit(2));
+            sleep(100);
+            // NOTE: The second result is done, but it is not consumed until the first one is.
+            assertFalse(third.isDone());
+            assertEquals(2, requests.size());
+
+            requests.get(0).complete(0);
+            third.get(10, TimeUnit.SECONDS);
+            assertEquals(3, requests.size());
+            requests.get(2).complete(2);
+            pipeline.finish();
+        }
+        assertEquals(Arrays.asList(0, 1, 2), consumed);
+    }
+
+    @Test
+    public void testFailureIsRethrown() {
+        final RequestPipeline<Integer, Integer> pipeline =
+                new RequestPipeline<>(
+                        2,
+                        i -> {
+                            if (i == 1) {
+                                throw new IllegalStateException("failed " + i);
+                            }
+                            return i;
+                        },
+                        (i, elapsedMillis) -> {},
+                        () -> {});
+        try {
+            // NOTE: A failure that is done before submit returns is thrown from submit.
+            final IllegalStateException e =
+                    assertThrows(
+                            IllegalStateException.class,
+                            () -> {
+                                pipeline.submit(0);
+                                pipeline.submit(1);
+                                pipeline.finish();
+                            });
+            assertEquals("failed 1", e.getMessage());
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void testResourceIsClosed() {
+        final AtomicInteger closed = new AtomicInteger();
+        new RequestPipeline<Integer, Integer>(1, i -> i, (i, e) -> {}, closed::incrementAndGet)
+                .close();
+        assertEquals(1, closed.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+}
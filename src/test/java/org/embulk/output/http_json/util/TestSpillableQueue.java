@@ -0,0 +1,135 @@
+package org.embulk.output.http_json.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TestSpillableQueue {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+    @TempDir Path tempDir;
+
+    @Test
+    public void testItemsUnderTheThresholdAreKeptInMemory() {
+        try (SpillableQueue<ObjectNode> queue = newQueue(1000)) {
+            final List<ObjectNode> records = records(10);
+            records.forEach(queue::add);
+            assertFalse(queue.isSpilled());
+            assertEquals(0, countFiles());
+            assertEquals(records, queue.stream().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void testSpilledItemsAreReadBackInOrder() {
+        try (SpillableQueue<ObjectNode> queue = newQueue(100)) {
+            final List<ObjectNode> records = records(100);
+            records.forEach(queue::add);
+            assertTrue(queue.isSpilled());
+            assertEquals(1, countFiles());
+            assertEquals(records, queue.stream().collect(Collectors.toList()));
+        }
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void testSpilledItemsAreWrittenAsSmile() throws IOException {
+        try (SpillableQueue<ObjectNode> queue = newQueue(0)) {
+            // NOTE: The first item is always kept in memory.
+            queue.add(record(0));
+            queue.add(record(1));
+            final Path segment = listFiles().get(0);
+            final List<ObjectNode> read = queue.stream().collect(Collectors.toList());
+            final byte[] spilled = Files.readAllBytes(segment);
+            // NOTE: A 4 bytes length prefix followed by the Smile header ":)\n".
+            assertEquals(':', spilled[4]);
+            assertEquals(')', spilled[5]);
+            assertEquals('\n', spilled[6]);
+            assertEquals(records(2), read);
+        }
+    }
+
+    @Test
+    public void testSegmentIsDeletedWithoutBeingRead() {
+        final SpillableQueue<ObjectNode> queue = newQueue(10);
+        records(10).forEach(queue::add);
+        assertEquals(1, countFiles());
+        queue.close();
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void testSegmentIsDeletedWhenPartiallyRead() {
+        final SpillableQueue<ObjectNode> queue = newQueue(10);
+        records(10).forEach(queue::add);
+        assertEquals(5, queue.stream().limit(5).count());
+        queue.close();
+        assertEquals(0, countFiles());
+    }
+
+    private SpillableQueue<ObjectNode> newQueue(long thresholdBytes) {
+        return new SpillableQueue<>(
+                thresholdBytes,
+                Optional.of(tempDir.toString()),
+                record -> record.toString().length(),
+                record -> {
+                    try {
+                        return SMILE_MAPPER.writeValueAsBytes(record);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                },
+                bytes -> {
+                    try {
+                        return (ObjectNode) SMILE_MAPPER.readTree(bytes);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    private static List<ObjectNode> records(int count) {
+        final List<ObjectNode> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(record(i));
+        }
+        return records;
+    }
+
+    private static ObjectNode record(int i) {
+        final ObjectNode record = OBJECT_MAPPER.createObjectNode();
+        record.put("i", i);
+        record.put("s", "record " + i);
+        record.putObject("nested").put("d", i / 2.0);
+        return record;
+    }
+
+    private long countFiles() {
+        return listFiles().size();
+    }
+
+    private List<Path> listFiles() {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
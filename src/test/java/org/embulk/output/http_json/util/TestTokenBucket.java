@@ -0,0 +1,77 @@
+package org.embulk.output.http_json.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class TestTokenBucket {
+
+    @Test
+    public void testStartsFull() {
+        final TokenBucket bucket = new TokenBucket(10);
+        assertEquals(0, bucket.reserve(10));
+        assertTrue(bucket.reserve(1) > 0);
+    }
+
+    @Test
+    public void testReserveQueuesUp() {
+        final TokenBucket bucket = new TokenBucket(10);
+        bucket.reserve(10);
+        final long first = bucket.reserve(5);
+        final long second = bucket.reserve(5);
+        assertTrue(Math.abs(first - TimeUnit.MILLISECONDS.toNanos(500)) < millis(50), "" + first);
+        assertTrue(Math.abs(second - TimeUnit.SECONDS.toNanos(1)) < millis(50), "" + second);
+    }
+
+    @Test
+    public void testLargeRequestWaitsOnlyForAFullBucket() {
+        final TokenBucket bucket = new TokenBucket(10);
+        bucket.reserve(10);
+        final long waitNanos = bucket.reserve(100);
+        assertTrue(Math.abs(waitNanos - TimeUnit.SECONDS.toNanos(1)) < millis(50), "" + waitNanos);
+        // NOTE: The tokens owed by the large request delay the next one.
+        assertTrue(bucket.reserve(1) > TimeUnit.SECONDS.toNanos(9));
+    }
+
+    @Test
+    public void testAcquireWaits() {
+        final TokenBucket bucket = new TokenBucket(20);
+        final long startNanos = System.nanoTime();
+        bucket.acquire(20);
+        bucket.acquire(10);
+        final long elapsedNanos = System.nanoTime() - startNanos;
+        assertTrue(elapsedNanos >= millis(450), "" + elapsedNanos);
+        assertTrue(elapsedNanos < millis(1500), "" + elapsedNanos);
+    }
+
+    @Test
+    public void testRefills() throws Exception {
+        final TokenBucket bucket = new TokenBucket(100);
+        bucket.reserve(100);
+        Thread.sleep(200);
+        assertEquals(0, bucket.reserve(10));
+    }
+
+    @Test
+    public void testSharedByNameAndRate() {
+        final TokenBucket bucket = TokenBucket.shared("test:example.com", 10);
+        assertSame(bucket, TokenBucket.shared("test:example.com", 10));
+        assertNotSame(bucket, TokenBucket.shared("test:example.com", 20));
+        assertNotSame(bucket, TokenBucket.shared("test:example.org", 10));
+    }
+
+    @Test
+    public void testSharedBucketsAreCleared() {
+        final TokenBucket bucket = TokenBucket.shared("test:example.net", 10);
+        TokenBucket.clearShared();
+        assertNotSame(bucket, TokenBucket.shared("test:example.net", 10));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
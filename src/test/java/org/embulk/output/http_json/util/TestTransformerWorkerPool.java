@@ -0,0 +1,52 @@
+package org.embulk.output.http_json.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TestTransformerWorkerPool {
+
+    @AfterEach
+    public void shutdown() {
+        TransformerWorkerPool.shutdown();
+    }
+
+    @Test
+    public void testPoolIsSizedByEachJob() {
+        TransformerWorkerPool.start(4);
+        assertEquals(4, countThreads(4));
+        TransformerWorkerPool.shutdown();
+
+        // NOTE: The threads of the next job follow its own setting.
+        TransformerWorkerPool.start(1);
+        assertEquals(1, countThreads(4));
+    }
+
+    @Test
+    public void testPoolIsStartedByTheFirstTaskWithoutAJob() {
+        final String threadName =
+                TransformerWorkerPool.join(
+                        TransformerWorkerPool.supply(2, () -> Thread.currentThread().getName()));
+        assertTrue(threadName.startsWith("TransformerWorkerPool-"), threadName);
+    }
+
+    // NOTE: The pool starts a new thread for each transformer until it has as many as its size.
+    private static int countThreads(int transformers) {
+        final Set<String> threadNames = new HashSet<>();
+        final List<CompletableFuture<String>> transformed = new ArrayList<>();
+        for (int i = 0; i < transformers; i++) {
+            transformed.add(
+                    TransformerWorkerPool.supply(
+                            transformers, () -> Thread.currentThread().getName()));
+        }
+        transformed.forEach(future -> threadNames.add(TransformerWorkerPool.join(future)));
+        return threadNames.size();
+    }
+}